@@ -0,0 +1,109 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.Random;
+
+/**
+ * Reproducible synthetic data for the benchmarks. The same shape and seed
+ * always give the same matrix, so timings of different builds are comparable.
+ */
+public final class BenchmarkData {
+
+        static final long SEED = PCA.RANDOM_SEED;
+        /* Rank of the signal; the spectrum decays so NIPALS converges quickly */
+        private static final int RANK = 10;
+        private static final double NOISE = 0.01;
+
+        private BenchmarkData() {
+        }
+
+        /**
+         * Benchmark shapes, all with the same number of values. Public because
+         * the JMH generated classes in dr.jmh_generated set the parameter.
+         */
+        public enum Shape {
+
+                TALL(20000, 200), WIDE(200, 20000), SQUARE(2000, 2000);
+                final int rows;
+                final int cols;
+
+                Shape(int rows, int cols) {
+                        this.rows = rows;
+                        this.cols = cols;
+                }
+        }
+
+        /**
+         * @return Low-rank signal with decaying spectrum plus Gaussian noise
+         * and a column offset, so that centering matters
+         */
+        static double[][] dense(int rows, int cols, long seed) {
+                Random random = new Random(seed);
+                double[][] U = new double[rows][RANK];
+                double[][] V = new double[RANK][cols];
+                for (int i = 0; i < rows; i++) {
+                        for (int c = 0; c < RANK; c++) {
+                                U[i][c] = random.nextGaussian() * 3 * (RANK - c);
+                        }
+                }
+                for (int c = 0; c < RANK; c++) {
+                        for (int j = 0; j < cols; j++) {
+                                V[c][j] = random.nextGaussian();
+                        }
+                }
+                double[][] X = new double[rows][cols];
+                for (int i = 0; i < rows; i++) {
+                        for (int j = 0; j < cols; j++) {
+                                double x = j % 13 + NOISE * random.nextGaussian();
+                                for (int c = 0; c < RANK; c++) {
+                                        x += U[i][c] * V[c][j];
+                                }
+                                X[i][j] = x;
+                        }
+                }
+                return X;
+        }
+
+        /**
+         * @return CSR matrix with the given fraction of non-zeros. Every row
+         * draws its values from one of RANK column groups, which gives a
+         * low-rank block structure.
+         */
+        static SparseDataMatrix sparse(int rows, int cols, double density, long seed) {
+                Random random = new Random(seed);
+                int perRow = Math.max(1, (int) Math.round(density * cols));
+                int groupWidth = Math.max(perRow, cols / RANK);
+                int[] pointers = new int[rows + 1];
+                int[] indices = new int[rows * perRow];
+                double[] values = new double[rows * perRow];
+                int k = 0;
+                for (int i = 0; i < rows; i++) {
+                        int group = i % RANK;
+                        int first = Math.min(cols - groupWidth, group * groupWidth);
+                        // evenly spaced columns of the group keep indices sorted
+                        for (int e = 0; e < perRow; e++) {
+                                indices[k] = first + (int) ((long) e * groupWidth / perRow);
+                                values[k] = (RANK - group) * (1 + random.nextDouble());
+                                k++;
+                        }
+                        pointers[i + 1] = k;
+                }
+                return new SparseDataMatrix(rows, cols, pointers, indices, values, true);
+        }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the dr benchmarks with the allocation profiler, equivalent to
+ * "java -jar benchmarks.jar dr -prof gc". An optional argument restricts the
+ * run to the benchmarks matching that regular expression.
+ *
+ * The JMH jars are not shipped in libml/lib. With jmh-core-1.37.jar,
+ * jmh-generator-annprocess-1.37.jar, jopt-simple-5.0.4.jar and
+ * commons-math3-3.6.1.jar from Maven Central in a directory $JMH, the
+ * benchmarks are built and run from libml with
+ *
+ * <pre>
+ * javac -cp "lib/*:$JMH/*" \
+ *     -processorpath $JMH/jmh-generator-annprocess-1.37.jar:$JMH/jmh-core-1.37.jar \
+ *     -d build/bench src/dr/*.java src/figs/*.java bench/dr/*.java
+ * java -cp "build/bench:lib/*:$JMH/*" dr.BenchmarkRunner [regexp]
+ * </pre>
+ *
+ * The annotation processor writes the generated benchmark classes and
+ * META-INF/BenchmarkList into build/bench; the processor path must list the
+ * jars, javac does not expand a wildcard there.
+ */
+public class BenchmarkRunner {
+
+        public static void main(String[] args) throws RunnerException {
+                Options options = new OptionsBuilder()
+                        .include(args.length > 0 ? args[0] : "dr\\..*Benchmark")
+                        .addProfiler(GCProfiler.class)
+                        .build();
+                new Runner(options).run();
+        }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Fitting the first components with NIPALS on dense and sparse input. The
+ * sparse path runs on the calling thread, so only the dense benchmark takes
+ * the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NipalsBenchmark {
+
+        private static final int COMPONENTS = 5;
+        private static final double SPARSE_DENSITY = 0.01;
+        @Param({"TALL", "WIDE", "SQUARE"})
+        BenchmarkData.Shape shape;
+
+        /**
+         * Dense input and the parallelism of its products.
+         */
+        @State(Scope.Benchmark)
+        public static class Dense {
+
+                @Param({"1", "2", "4", "8", "16", "32", "64"})
+                int threads;
+                Matrix X;
+
+                @Setup(Level.Trial)
+                public void createData(NipalsBenchmark benchmark) {
+                        BenchmarkData.Shape shape = benchmark.shape;
+                        X = new Matrix(BenchmarkData.dense(shape.rows, shape.cols, BenchmarkData.SEED));
+                }
+        }
+
+        /**
+         * Sparse input, fitted on the calling thread.
+         */
+        @State(Scope.Benchmark)
+        public static class Sparse {
+
+                SparseDataMatrix X;
+
+                @Setup(Level.Trial)
+                public void createData(NipalsBenchmark benchmark) {
+                        BenchmarkData.Shape shape = benchmark.shape;
+                        X = BenchmarkData.sparse(shape.rows, shape.cols, SPARSE_DENSITY, BenchmarkData.SEED);
+                }
+        }
+
+        @Benchmark
+        public PCA dense(Dense input) {
+                PCA pca = createPCA();
+                pca.nipals(input.X, null, null, input.threads);
+                return pca;
+        }
+
+        @Benchmark
+        public PCA sparse(Sparse input) {
+                PCA pca = createPCA();
+                pca.nipals(input.X, null, null);
+                return pca;
+        }
+
+        private PCA createPCA() {
+                PCA pca = new PCA(shape.rows, shape.cols, COMPONENTS);
+                pca.setScaling(Scaling.MEAN_CENTER);
+                return pca;
+        }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Column centering and scaling: PCA.center, PCA.scale and the parallel
+ * in-place Standardizer. Only standardize takes the thread count and a
+ * private copy of the input, center and scale read the shared matrix once
+ * per shape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PreprocessingBenchmark {
+
+        @Param({"TALL", "WIDE", "SQUARE"})
+        BenchmarkData.Shape shape;
+        private Matrix X;
+        private PCA pca;
+
+        @Setup(Level.Trial)
+        public void createData() {
+                X = new Matrix(BenchmarkData.dense(shape.rows, shape.cols, BenchmarkData.SEED));
+                pca = new PCA(shape.rows, shape.cols);
+        }
+
+        /**
+         * Input of standardize, copied once per trial. Standardizing the
+         * already standardized matrix again does the same work, so the copy
+         * is not repeated between invocations.
+         */
+        @State(Scope.Benchmark)
+        public static class Work {
+
+                @Param({"1", "2", "4", "8", "16", "32", "64"})
+                int threads;
+                Matrix X;
+
+                @Setup(Level.Trial)
+                public void copyData(PreprocessingBenchmark data) {
+                        X = data.X.copy();
+                }
+        }
+
+        @Benchmark
+        public Matrix center() {
+                return pca.center(X);
+        }
+
+        @Benchmark
+        public Matrix scale() {
+                return pca.scale(X);
+        }
+
+        @Benchmark
+        public Matrix standardize(Work work) {
+                new Standardizer(Scaling.UNIT_VARIANCE).standardize(work.X, work.threads);
+                return work.X;
+        }
+}
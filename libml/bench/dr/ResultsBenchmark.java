@@ -0,0 +1,76 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the results of a fitted model: getPCs() and the construction of
+ * the scores plot dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultsBenchmark {
+
+        private static final int COMPONENTS = 5;
+        @Param({"TALL", "WIDE", "SQUARE"})
+        BenchmarkData.Shape shape;
+        private PCA pca;
+        private Matrix scores;
+        private String[] rowNames;
+
+        @Setup(Level.Trial)
+        public void fit() {
+                Matrix X = new Matrix(BenchmarkData.dense(shape.rows, shape.cols, BenchmarkData.SEED));
+                rowNames = new String[shape.rows];
+                for (int i = 0; i < rowNames.length; i++) {
+                        rowNames[i] = "sample" + i;
+                }
+                pca = new PCA(shape.rows, shape.cols, COMPONENTS);
+                pca.nipals(X, null, rowNames);
+                scores = new Matrix(pca.transform(X.getArray()));
+        }
+
+        @Benchmark
+        public List<PrincipleComponent> getPCs() {
+                return pca.getPCs();
+        }
+
+        @Benchmark
+        public PCADataset dataset() {
+                return new PCADataset(scores, rowNames, "PC1", "PC2");
+        }
+}
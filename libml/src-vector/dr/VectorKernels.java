@@ -0,0 +1,133 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels using the widest double vectors of the CPU, with fused
+ * multiply-adds and a scalar loop for the tail. gemv reads each block of x
+ * once for four rows; gemvTranspose is the tiled loop of Kernels, which
+ * already runs on the vector axpy. This class lives in its own source tree
+ * because compiling and loading it needs --add-modules jdk.incubator.vector:
+ *
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp out -d out src-vector/dr/VectorKernels.java
+ * </pre>
+ *
+ * Without it on the class path, or without the module at run time, Kernels
+ * falls back to ScalarKernels.
+ */
+class VectorKernels extends Kernels {
+
+        private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+        double dot(double[] a, double[] b) {
+                int n = a.length;
+                int upper = SPECIES.loopBound(n);
+                DoubleVector sum = DoubleVector.zero(SPECIES);
+                int i = 0;
+                for (; i < upper; i += SPECIES.length()) {
+                        sum = DoubleVector.fromArray(SPECIES, a, i).fma(DoubleVector.fromArray(SPECIES, b, i), sum);
+                }
+                double result = sum.reduceLanes(VectorOperators.ADD);
+                for (; i < n; i++) {
+                        result += a[i] * b[i];
+                }
+                return result;
+        }
+
+        double squaredDistance(double[] a, double[] b) {
+                int n = a.length;
+                int upper = SPECIES.loopBound(n);
+                DoubleVector sum = DoubleVector.zero(SPECIES);
+                int i = 0;
+                for (; i < upper; i += SPECIES.length()) {
+                        DoubleVector d = DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i));
+                        sum = d.fma(d, sum);
+                }
+                double result = sum.reduceLanes(VectorOperators.ADD);
+                for (; i < n; i++) {
+                        double d = a[i] - b[i];
+                        result += d * d;
+                }
+                return result;
+        }
+
+        /**
+         * Four rows at a time, sharing the loads of x. Each row keeps its own
+         * accumulator and is summed in the same order as dot, so the result
+         * does not depend on how the rows are blocked.
+         */
+        @Override
+        void gemv(double[][] A, double[] x, double[] y, int from, int to) {
+                int n = x.length;
+                int upper = SPECIES.loopBound(n);
+                int i = from;
+                for (; i + 4 <= to; i += 4) {
+                        double[] a0 = A[i];
+                        double[] a1 = A[i + 1];
+                        double[] a2 = A[i + 2];
+                        double[] a3 = A[i + 3];
+                        DoubleVector s0 = DoubleVector.zero(SPECIES);
+                        DoubleVector s1 = s0;
+                        DoubleVector s2 = s0;
+                        DoubleVector s3 = s0;
+                        int j = 0;
+                        for (; j < upper; j += SPECIES.length()) {
+                                DoubleVector v = DoubleVector.fromArray(SPECIES, x, j);
+                                s0 = DoubleVector.fromArray(SPECIES, a0, j).fma(v, s0);
+                                s1 = DoubleVector.fromArray(SPECIES, a1, j).fma(v, s1);
+                                s2 = DoubleVector.fromArray(SPECIES, a2, j).fma(v, s2);
+                                s3 = DoubleVector.fromArray(SPECIES, a3, j).fma(v, s3);
+                        }
+                        double r0 = s0.reduceLanes(VectorOperators.ADD);
+                        double r1 = s1.reduceLanes(VectorOperators.ADD);
+                        double r2 = s2.reduceLanes(VectorOperators.ADD);
+                        double r3 = s3.reduceLanes(VectorOperators.ADD);
+                        for (; j < n; j++) {
+                                double xj = x[j];
+                                r0 += a0[j] * xj;
+                                r1 += a1[j] * xj;
+                                r2 += a2[j] * xj;
+                                r3 += a3[j] * xj;
+                        }
+                        y[i] = r0;
+                        y[i + 1] = r1;
+                        y[i + 2] = r2;
+                        y[i + 3] = r3;
+                }
+                for (; i < to; i++) {
+                        y[i] = dot(A[i], x);
+                }
+        }
+
+        void axpy(double alpha, double[] x, double[] y, int from, int to) {
+                DoubleVector a = DoubleVector.broadcast(SPECIES, alpha);
+                int upper = from + SPECIES.loopBound(to - from);
+                int i = from;
+                for (; i < upper; i += SPECIES.length()) {
+                        DoubleVector.fromArray(SPECIES, x, i).fma(a, DoubleVector.fromArray(SPECIES, y, i)).intoArray(y, i);
+                }
+                for (; i < to; i++) {
+                        y[i] += alpha * x[i];
+                }
+        }
+}
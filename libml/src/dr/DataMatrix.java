@@ -0,0 +1,55 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Data matrix that PCA only accesses through products, so that the values
+ * do not have to be held in a dense Jama Matrix. The rows are observations
+ * and the columns are variables.
+ */
+public interface DataMatrix {
+
+        public int getRowCount();
+
+        public int getColumnCount();
+
+        /**
+         * y = X * x
+         */
+        public void multiply(double[] x, double[] y);
+
+        /**
+         * y = X' * x
+         */
+        public void transposeMultiply(double[] x, double[] y);
+
+        /**
+         * C = X * B, where B has one row per column of X
+         */
+        public void multiply(double[][] B, double[][] C);
+
+        /**
+         * C = X' * B, where B has one row per row of X
+         */
+        public void transposeMultiply(double[][] B, double[][] C);
+
+        /**
+         * Copies rows from (inclusive) to to (exclusive) into rows[0 .. to - from)
+         */
+        public void getRows(int from, int to, double[][] rows);
+}
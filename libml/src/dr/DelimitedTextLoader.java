@@ -0,0 +1,499 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads a CSV or TSV table of doubles, one sample per line, into the
+ * row arrays of a Jama Matrix. The file is split at line boundaries into
+ * chunks of a few megabytes that are memory-mapped and parsed in parallel.
+ * Numbers are parsed from the bytes without creating Strings, and each row
+ * is written once into the array that the Matrix (and so PCA) uses. Only
+ * the row and column names are decoded into Strings, as are the rare
+ * numbers with more than 15 significant digits.
+ *
+ * Fields may be enclosed in double quotes, with "" standing for a quote,
+ * but quoted fields must not contain line breaks. Empty fields, NA and NaN
+ * are read as NaN. Empty lines are skipped.
+ */
+public class DelimitedTextLoader {
+
+        /* Bytes parsed by one task */
+        private static final int CHUNK_BYTES = 8 << 20;
+        /* Bytes read at a time while looking for a line break */
+        private static final int SCAN_BYTES = 64 * 1024;
+        /* Powers of ten that are exact doubles */
+        private static final double[] POWERS_OF_TEN = new double[23];
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+        private final byte delimiter;
+        private boolean header = true;
+        private boolean rowNames = true;
+        private int parallelism = 1;
+
+        static {
+                POWERS_OF_TEN[0] = 1;
+                for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+                        POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+                }
+        }
+
+        /**
+         * @param delimiter Field separator, for example ',' or '\t'
+         */
+        public DelimitedTextLoader(char delimiter) {
+                if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+                        throw new IllegalArgumentException("Unsupported delimiter " + (int) delimiter);
+                }
+                this.delimiter = (byte) delimiter;
+        }
+
+        /**
+         * Whether the first line holds the column names, true by default.
+         */
+        public void setHeader(boolean header) {
+                this.header = header;
+        }
+
+        /**
+         * Whether the first field of every line is the row name, true by
+         * default. The header then has one field more than the data columns.
+         */
+        public void setRowNames(boolean rowNames) {
+                this.rowNames = rowNames;
+        }
+
+        /**
+         * @param parallelism Number of threads parsing chunks, 1 parses on
+         * the calling thread
+         */
+        public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+        }
+
+        public Table load(File file) throws IOException {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                        FileChannel channel = raf.getChannel();
+                        long size = channel.size();
+                        long dataStart = 0;
+                        String[] columnNames = null;
+                        int cols;
+                        long firstEnd = nextLineStart(channel, 0);
+                        if (firstEnd > Integer.MAX_VALUE) {
+                                throw new IOException("The first line of " + file + " is too long");
+                        }
+                        byte[] first = new byte[(int) firstEnd];
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, firstEnd).get(first);
+                        int firstLength = lineLength(first, 0, (int) firstEnd);
+                        if (header) {
+                                String[] fields = readNames(first, 0, firstLength);
+                                cols = fields.length - (rowNames ? 1 : 0);
+                                columnNames = new String[cols];
+                                System.arraycopy(fields, fields.length - cols, columnNames, 0, cols);
+                                dataStart = firstEnd;
+                        } else {
+                                cols = countFields(first, 0, firstLength) - (rowNames ? 1 : 0);
+                        }
+
+                        List<Long> starts = new ArrayList<Long>();
+                        starts.add(dataStart);
+                        for (long p = dataStart + CHUNK_BYTES; p < size; ) {
+                                long start = nextLineStart(channel, p - 1);
+                                if (start >= size) {
+                                        break;
+                                }
+                                starts.add(start);
+                                p = start + CHUNK_BYTES;
+                        }
+                        starts.add(size);
+                        final Chunk[] chunks = new Chunk[starts.size() - 1];
+                        for (int i = 0; i < chunks.length; i++) {
+                                long length = starts.get(i + 1) - starts.get(i);
+                                if (length > Integer.MAX_VALUE) {
+                                        throw new IOException("A line of " + file + " is too long");
+                                }
+                                chunks[i] = new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, starts.get(i), length),
+                                        starts.get(i), cols);
+                        }
+
+                        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+                        try {
+                                // one chunk per task, a chunk is already megabytes of text
+                                MatrixKernels.forRange(chunks.length, 1, pool, new MatrixKernels.RangeBody() {
+
+                                        public void run(int from, int to) {
+                                                for (int i = from; i < to; i++) {
+                                                        chunks[i].parse();
+                                                }
+                                        }
+                                });
+                        } catch (NumberFormatException e) {
+                                // fork-join rethrows a copy, the original is its cause
+                                Throwable original = e.getCause() instanceof NumberFormatException ? e.getCause() : e;
+                                throw new IOException(file + ": " + original.getMessage());
+                        } finally {
+                                if (pool != null) {
+                                        pool.shutdown();
+                                }
+                        }
+
+                        int rows = 0;
+                        for (Chunk chunk : chunks) {
+                                if (chunk.error != null) {
+                                        throw new IOException(file + ": " + chunk.error);
+                                }
+                                rows += chunk.rows.size();
+                        }
+                        double[][] data = new double[rows][];
+                        String[] names = rowNames ? new String[rows] : null;
+                        int row = 0;
+                        for (Chunk chunk : chunks) {
+                                for (int i = 0; i < chunk.rows.size(); i++, row++) {
+                                        data[row] = chunk.rows.get(i);
+                                        if (names != null) {
+                                                names[row] = chunk.names.get(i);
+                                        }
+                                }
+                        }
+                        return new Table(data, cols, columnNames, names);
+                } finally {
+                        raf.close();
+                }
+        }
+
+        /**
+         * @return Position after the first line break at or after position,
+         * or the size of the file
+         */
+        private static long nextLineStart(FileChannel channel, long position) throws IOException {
+                ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+                while (true) {
+                        buffer.clear();
+                        int n = channel.read(buffer, position);
+                        if (n <= 0) {
+                                return channel.size();
+                        }
+                        byte[] bytes = buffer.array();
+                        for (int i = 0; i < n; i++) {
+                                if (bytes[i] == '\n') {
+                                        return position + i + 1;
+                                }
+                        }
+                        position += n;
+                }
+        }
+
+        /**
+         * @return Length of the line starting at from, without the line
+         * break
+         */
+        private static int lineLength(byte[] buffer, int from, int to) {
+                int end = from;
+                while (end < to && buffer[end] != '\n') {
+                        end++;
+                }
+                if (end > from && buffer[end - 1] == '\r') {
+                        end--;
+                }
+                return end - from;
+        }
+
+        /**
+         * @return End of the field starting at from, at the next delimiter
+         * outside quotes or at to
+         */
+        private int fieldEnd(byte[] buffer, int from, int to) {
+                int i = from;
+                while (i < to && buffer[i] == ' ') {
+                        i++;
+                }
+                if (i < to && buffer[i] == '"') {
+                        for (i++; i < to; i++) {
+                                if (buffer[i] == '"') {
+                                        if (i + 1 < to && buffer[i + 1] == '"') {
+                                                i++;
+                                        } else {
+                                                i++;
+                                                break;
+                                        }
+                                }
+                        }
+                }
+                while (i < to && buffer[i] != delimiter) {
+                        i++;
+                }
+                return i;
+        }
+
+        private int countFields(byte[] buffer, int from, int to) {
+                int count = 1;
+                for (int i = fieldEnd(buffer, from, to); i < to; i = fieldEnd(buffer, i + 1, to)) {
+                        count++;
+                }
+                return count;
+        }
+
+        private String[] readNames(byte[] buffer, int from, int to) {
+                String[] names = new String[countFields(buffer, from, to)];
+                for (int f = 0, i = from; f < names.length; f++) {
+                        int end = fieldEnd(buffer, i, to);
+                        names[f] = readString(buffer, i, end);
+                        i = end + 1;
+                }
+                return names;
+        }
+
+        /**
+         * @return Field text without surrounding spaces and quotes
+         */
+        private static String readString(byte[] buffer, int from, int to) {
+                while (from < to && buffer[from] == ' ') {
+                        from++;
+                }
+                while (to > from && buffer[to - 1] == ' ') {
+                        to--;
+                }
+                boolean quoted = to - from >= 2 && buffer[from] == '"' && buffer[to - 1] == '"';
+                if (quoted) {
+                        from++;
+                        to--;
+                }
+                String s = new String(buffer, from, to - from, UTF8);
+                return quoted ? s.replace("\"\"", "\"") : s;
+        }
+
+        /**
+         * Parses a decimal number from the bytes of one field. Numbers with
+         * at most 15 significant digits and a decimal exponent within +-22
+         * are computed with one exact multiplication or division, which is
+         * correctly rounded; anything else goes through Double.parseDouble.
+         */
+        static double parseDouble(byte[] buffer, int from, int to) {
+                int begin = from;
+                int end = to;
+                while (from < to && buffer[from] == ' ') {
+                        from++;
+                }
+                while (to > from && buffer[to - 1] == ' ') {
+                        to--;
+                }
+                if (to - from >= 2 && buffer[from] == '"' && buffer[to - 1] == '"') {
+                        from++;
+                        to--;
+                }
+                if (from == to) {
+                        return Double.NaN;
+                }
+                int i = from;
+                boolean negative = false;
+                byte c = buffer[i];
+                if (c == '-' || c == '+') {
+                        negative = c == '-';
+                        i++;
+                }
+                long mantissa = 0;
+                int digits = 0;
+                int exponent = 0;
+                boolean any = false;
+                for (; i < to; i++) {
+                        c = buffer[i];
+                        if (c < '0' || c > '9') {
+                                break;
+                        }
+                        any = true;
+                        if (digits < 18) {
+                                mantissa = mantissa * 10 + (c - '0');
+                                if (mantissa != 0) {
+                                        digits++;
+                                }
+                        } else {
+                                exponent++;
+                        }
+                }
+                if (i < to && buffer[i] == '.') {
+                        for (i++; i < to; i++) {
+                                c = buffer[i];
+                                if (c < '0' || c > '9') {
+                                        break;
+                                }
+                                any = true;
+                                if (digits < 18) {
+                                        mantissa = mantissa * 10 + (c - '0');
+                                        if (mantissa != 0) {
+                                                digits++;
+                                        }
+                                        exponent--;
+                                }
+                        }
+                }
+                if (any && i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+                        i++;
+                        boolean negativeExponent = false;
+                        if (i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+                                negativeExponent = buffer[i] == '-';
+                                i++;
+                        }
+                        int value = 0;
+                        int start = i;
+                        for (; i < to; i++) {
+                                c = buffer[i];
+                                if (c < '0' || c > '9') {
+                                        break;
+                                }
+                                value = Math.min(100000, value * 10 + (c - '0'));
+                        }
+                        if (i == start) {
+                                any = false;
+                        }
+                        exponent += negativeExponent ? -value : value;
+                }
+                if (!any || i != to || digits > 15 || exponent > 22 || exponent < -22) {
+                        return parseSlow(readString(buffer, begin, end));
+                }
+                double value = mantissa;
+                value = exponent >= 0 ? value * POWERS_OF_TEN[exponent] : value / POWERS_OF_TEN[-exponent];
+                return negative ? -value : value;
+        }
+
+        private static double parseSlow(String s) {
+                if (s.equalsIgnoreCase("NA") || s.equalsIgnoreCase("NaN")) {
+                        return Double.NaN;
+                }
+                return Double.parseDouble(s);
+        }
+
+        /**
+         * Lines of the file between two line boundaries.
+         */
+        private class Chunk {
+
+                private final MappedByteBuffer mapping;
+                private final long offset;
+                private final int cols;
+                final List<double[]> rows = new ArrayList<double[]>();
+                final List<String> names = new ArrayList<String>();
+                String error;
+
+                Chunk(MappedByteBuffer mapping, long offset, int cols) {
+                        this.mapping = mapping;
+                        this.offset = offset;
+                        this.cols = cols;
+                }
+
+                void parse() {
+                        // one bulk copy; indexing the array is much faster than the buffer
+                        byte[] buffer = new byte[mapping.limit()];
+                        mapping.get(buffer);
+                        int size = buffer.length;
+                        for (int line = 0; line < size && error == null; ) {
+                                int length = lineLength(buffer, line, size);
+                                if (length > 0) {
+                                        parseLine(buffer, line, line + length);
+                                }
+                                line += length;
+                                while (line < size && buffer[line] != '\n') {
+                                        line++;
+                                }
+                                line++;
+                        }
+                }
+
+                private void parseLine(byte[] buffer, int from, int to) {
+                        int i = from;
+                        if (rowNames) {
+                                int end = fieldEnd(buffer, i, to);
+                                names.add(readString(buffer, i, end));
+                                i = end + 1;
+                        }
+                        double[] row = new double[cols];
+                        int j = 0;
+                        for (; j < cols && i <= to; j++) {
+                                int end = fieldEnd(buffer, i, to);
+                                row[j] = parseDouble(buffer, i, end);
+                                i = end + 1;
+                        }
+                        if (j < cols || i <= to) {
+                                error = "the line at byte " + (offset + from) + " does not have "
+                                        + cols + " values";
+                                return;
+                        }
+                        rows.add(row);
+                }
+        }
+
+        /**
+         * Parsed table. The row arrays are the storage of getMatrix(), so
+         * the matrix is built without copying.
+         */
+        public static class Table {
+
+                private final double[][] data;
+                private final int cols;
+                private final String[] columnNames;
+                private final String[] rowNames;
+
+                Table(double[][] data, int cols, String[] columnNames, String[] rowNames) {
+                        this.data = data;
+                        this.cols = cols;
+                        this.columnNames = columnNames;
+                        this.rowNames = rowNames;
+                }
+
+                /**
+                 * @return Matrix backed by the parsed rows, to be passed to PCA
+                 * together with the names
+                 */
+                public Matrix getMatrix() {
+                        return new Matrix(data, data.length, cols);
+                }
+
+                public int getRowCount() {
+                        return data.length;
+                }
+
+                public int getColumnCount() {
+                        return cols;
+                }
+
+                /**
+                 * @return Column names from the header, null without header
+                 */
+                public String[] getColumnNames() {
+                        return columnNames;
+                }
+
+                /**
+                 * @return Row names from the first field of every line, null
+                 * when the lines have no names
+                 */
+                public String[] getRowNames() {
+                        return rowNames;
+                }
+        }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * DataMatrix view of a row-major array, such as the backing array of a Jama
+ * Matrix. The products use MatrixKernels on the given pool. With a
+ * column-major mirror the transposed products become contiguous dot
+ * products over the columns, at the cost of a second copy of the data.
+ */
+class DenseDataMatrix implements DataMatrix {
+
+        private final double[][] X;
+        /* X transposed, or null when X' products run on X itself */
+        private final double[][] mirror;
+        private final ForkJoinPool pool;
+
+        DenseDataMatrix(double[][] X, ForkJoinPool pool) {
+                this(X, pool, false);
+        }
+
+        DenseDataMatrix(double[][] X, ForkJoinPool pool, boolean columnMirror) {
+                this.X = X;
+                this.pool = pool;
+                mirror = columnMirror ? MatrixKernels.transpose(X) : null;
+        }
+
+        public int getRowCount() {
+                return X.length;
+        }
+
+        public int getColumnCount() {
+                return X[0].length;
+        }
+
+        public void multiply(double[] x, double[] y) {
+                MatrixKernels.multiply(X, x, y, pool);
+        }
+
+        public void transposeMultiply(double[] x, double[] y) {
+                if (mirror != null) {
+                        MatrixKernels.multiply(mirror, x, y, pool);
+                } else {
+                        MatrixKernels.transposeMultiply(X, x, y, pool);
+                }
+        }
+
+        public void multiply(double[][] B, double[][] C) {
+                MatrixKernels.multiply(X, B, C, pool);
+        }
+
+        public void transposeMultiply(double[][] B, double[][] C) {
+                if (mirror != null) {
+                        MatrixKernels.multiply(mirror, B, C, pool);
+                } else {
+                        MatrixKernels.transposeMultiply(X, B, C, pool);
+                }
+        }
+
+        public void getRows(int from, int to, double[][] rows) {
+                for (int i = from; i < to; i++) {
+                        System.arraycopy(X[i], 0, rows[i - from], 0, X[i].length);
+                }
+        }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Single-precision row-major data matrix. The values take half the memory
+ * of a Jama Matrix and every product reads half the bytes. PCA.nipals and
+ * PCA.randomizedSVD fit it without a copy, with the scaling and the
+ * deflation applied implicitly, so the float array is the only copy of the
+ * data. The score and loading vectors stay in double.
+ *
+ * The matrix-vector products used by NIPALS accumulate in float, or in
+ * double when doubleAccumulation is set, which costs little and keeps the
+ * sums of long rows accurate. The block products always accumulate in
+ * double. Instances are not thread-safe.
+ */
+public class FloatDataMatrix implements DataMatrix {
+
+        private final float[][] X;
+        private final boolean doubleAccumulation;
+        private final ForkJoinPool pool;
+        /* Float accumulators of transposeMultiply, one per column */
+        private float[] columnSums;
+
+        public FloatDataMatrix(float[][] X, boolean doubleAccumulation) {
+                this(X, doubleAccumulation, null);
+        }
+
+        /**
+         * @param pool Pool running the matrix-vector products in row or
+         * column blocks, null for the calling thread
+         */
+        public FloatDataMatrix(float[][] X, boolean doubleAccumulation, ForkJoinPool pool) {
+                this.X = X;
+                this.doubleAccumulation = doubleAccumulation;
+                this.pool = pool;
+        }
+
+        /**
+         * @return Single-precision copy of X
+         */
+        public static float[][] toFloat(Matrix X) {
+                double[][] x = X.getArray();
+                float[][] f = new float[x.length][];
+                for (int i = 0; i < x.length; i++) {
+                        f[i] = new float[x[i].length];
+                        for (int j = 0; j < x[i].length; j++) {
+                                f[i][j] = (float) x[i][j];
+                        }
+                }
+                return f;
+        }
+
+        boolean hasDoubleAccumulation() {
+                return doubleAccumulation;
+        }
+
+        public int getRowCount() {
+                return X.length;
+        }
+
+        public int getColumnCount() {
+                return X[0].length;
+        }
+
+        public void multiply(final double[] x, final double[] y) {
+                MatrixKernels.forRange(X.length, pool, new MatrixKernels.RangeBody() {
+
+                        public void run(int from, int to) {
+                                multiplyRows(x, y, from, to);
+                        }
+                });
+        }
+
+        public void transposeMultiply(final double[] x, final double[] y) {
+                int cols = y.length;
+                if (!doubleAccumulation && (columnSums == null || columnSums.length != cols)) {
+                        columnSums = new float[cols];
+                }
+                MatrixKernels.forRange(cols, pool, new MatrixKernels.RangeBody() {
+
+                        public void run(int from, int to) {
+                                transposeMultiplyColumns(x, y, from, to);
+                        }
+                });
+        }
+
+        public void multiply(double[][] B, double[][] C) {
+                for (int i = 0; i < X.length; i++) {
+                        float[] row = X[i];
+                        double[] c = C[i];
+                        Arrays.fill(c, 0);
+                        for (int j = 0; j < row.length; j++) {
+                                double a = row[j];
+                                double[] b = B[j];
+                                for (int l = 0; l < c.length; l++) {
+                                        c[l] += a * b[l];
+                                }
+                        }
+                }
+        }
+
+        public void transposeMultiply(double[][] B, double[][] C) {
+                for (int j = 0; j < C.length; j++) {
+                        Arrays.fill(C[j], 0);
+                }
+                for (int i = 0; i < X.length; i++) {
+                        float[] row = X[i];
+                        double[] b = B[i];
+                        for (int j = 0; j < row.length; j++) {
+                                double a = row[j];
+                                double[] c = C[j];
+                                for (int l = 0; l < c.length; l++) {
+                                        c[l] += a * b[l];
+                                }
+                        }
+                }
+        }
+
+        public void getRows(int from, int to, double[][] rows) {
+                for (int i = from; i < to; i++) {
+                        float[] row = X[i];
+                        double[] dst = rows[i - from];
+                        for (int j = 0; j < row.length; j++) {
+                                dst[j] = row[j];
+                        }
+                }
+        }
+
+        private void multiplyRows(double[] x, double[] y, int from, int to) {
+                for (int i = from; i < to; i++) {
+                        float[] row = X[i];
+                        if (doubleAccumulation) {
+                                double sum = 0;
+                                for (int j = 0; j < row.length; j++) {
+                                        sum += row[j] * x[j];
+                                }
+                                y[i] = sum;
+                        } else {
+                                float sum = 0;
+                                for (int j = 0; j < row.length; j++) {
+                                        sum += row[j] * (float) x[j];
+                                }
+                                y[i] = sum;
+                        }
+                }
+        }
+
+        private void transposeMultiplyColumns(double[] x, double[] y, int from, int to) {
+                if (doubleAccumulation) {
+                        Arrays.fill(y, from, to, 0);
+                        for (int i = 0; i < X.length; i++) {
+                                float[] row = X[i];
+                                double xi = x[i];
+                                for (int j = from; j < to; j++) {
+                                        y[j] += row[j] * xi;
+                                }
+                        }
+                } else {
+                        float[] sums = columnSums;
+                        Arrays.fill(sums, from, to, 0);
+                        for (int i = 0; i < X.length; i++) {
+                                float[] row = X[i];
+                                float xi = (float) x[i];
+                                for (int j = from; j < to; j++) {
+                                        sums[j] += row[j] * xi;
+                                }
+                        }
+                        for (int j = from; j < to; j++) {
+                                y[j] = sums[j];
+                        }
+                }
+        }
+}
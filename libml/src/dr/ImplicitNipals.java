@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.Arrays;
+
+/**
+ * NIPALS on a DataMatrix that is never modified. The residual after c
+ * components, E = X - sum p_i t_i', is applied implicitly:
+ * E t = X t - sum p_i (t_i . t) and E' p = X' p - sum t_i (p_i . p),
+ * so only the extracted score and loading vectors are kept besides X.
+ */
+class ImplicitNipals {
+
+        private final DataMatrix X;
+        private final double threshold;
+        private final int maxIterations;
+        /* Sum of squares of every column of the current residual */
+        private final double[] columnSumOfSquares;
+        /* Extracted loadings (length cols) and unit scores (length rows) */
+        private final double[][] T;
+        private final double[][] P;
+        private int nComponents;
+        /* Change of the loading vector in the last iteration */
+        private double residual;
+        private boolean converged;
+
+        /**
+         * @param columnSumOfSquares Sum of squares of every column of X, used
+         * to pick the start vector of each component without a pass over X
+         * @param maxIterations Iterations after which a component is returned
+         * even if it has not converged
+         */
+        ImplicitNipals(DataMatrix X, double[] columnSumOfSquares, int maxComponents, double threshold,
+                int maxIterations) {
+                this.X = X;
+                this.threshold = threshold;
+                this.maxIterations = maxIterations;
+                this.columnSumOfSquares = columnSumOfSquares.clone();
+                T = new double[maxComponents][];
+                P = new double[maxComponents][];
+        }
+
+        /**
+         * Extracts the next component into w.t (loadings) and w.p (unit scores).
+         * @param start Loading vector to start from, or null to start from
+         * the residual column with the largest sum of squares
+         * @return Number of iterations until convergence, at most
+         * maxIterations
+         */
+        int next(NipalsWorkspace w, double[] start) {
+                if (start != null) {
+                        System.arraycopy(start, 0, w.t, 0, w.t.length);
+                } else {
+                        int largest = 0;
+                        for (int j = 1; j < columnSumOfSquares.length; j++) {
+                                if (columnSumOfSquares[j] > columnSumOfSquares[largest]) {
+                                        largest = j;
+                                }
+                        }
+                        Arrays.fill(w.t, 0);
+                        w.t[largest] = 1;
+                }
+                int iterations = 0;
+                do {
+                        iterations++;
+                        residualTimes(w.t, w.p);
+                        double norm = Math.sqrt(dot(w.p, w.p));
+                        for (int i = 0; i < w.p.length; i++) {
+                                w.p[i] /= norm;
+                        }
+
+                        w.swapLoadings();
+                        residualTransposeTimes(w.p, w.t);
+                        residual = Math.sqrt(squaredDistance(w.tOld, w.t));
+                } while (residual > threshold && iterations < maxIterations);
+                converged = !(residual > threshold);
+
+                T[nComponents] = w.t.clone();
+                P[nComponents] = w.p.clone();
+                nComponents++;
+                for (int j = 0; j < columnSumOfSquares.length; j++) {
+                        columnSumOfSquares[j] -= w.t[j] * w.t[j];
+                }
+                return iterations;
+        }
+
+        /**
+         * @return Change of the loading vector in the last iteration of the
+         * last component
+         */
+        double getResidual() {
+                return residual;
+        }
+
+        /**
+         * @return false when the last component stopped at maxIterations
+         */
+        boolean hasConverged() {
+                return converged;
+        }
+
+        private void residualTimes(double[] t, double[] p) {
+                X.multiply(t, p);
+                for (int c = 0; c < nComponents; c++) {
+                        double a = dot(T[c], t);
+                        double[] pc = P[c];
+                        for (int i = 0; i < p.length; i++) {
+                                p[i] -= a * pc[i];
+                        }
+                }
+        }
+
+        private void residualTransposeTimes(double[] p, double[] t) {
+                X.transposeMultiply(p, t);
+                for (int c = 0; c < nComponents; c++) {
+                        double a = dot(P[c], p);
+                        double[] tc = T[c];
+                        for (int j = 0; j < t.length; j++) {
+                                t[j] -= a * tc[j];
+                        }
+                }
+        }
+
+        private static double dot(double[] a, double[] b) {
+                return MatrixKernels.dot(a, b);
+        }
+
+        private static double squaredDistance(double[] a, double[] b) {
+                return MatrixKernels.squaredDistance(a, b);
+        }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental PCA (incremental SVD, Ross et al. 2008) for samples that arrive
+ * in batches. Only the running column mean and variance, the k loading
+ * directions and their singular values are kept, so the memory does not
+ * depend on the number of samples seen. Each batch is processed in chunks of
+ * at most k rows; a chunk is merged by an SVD of the (2k + 1) x p matrix
+ * stacking the current components, the centered chunk and a mean correction
+ * row, so a batch costs O(batch * p * k).
+ * The rows of a batch are observations and the columns are variables.
+ *
+ * The columns are always centered with the running mean. With a scaling set
+ * by setScaling they are also divided by a scale that is fixed from the first
+ * batch, since rescaling would change the components merged so far. The
+ * scores are unit scores as those of PCA, so both models give plots and
+ * projections in the same units.
+ */
+public class IncrementalPCA {
+
+        private final int nVars;
+        private final int nComponents;
+        /* Number of samples merged so far */
+        private long nSamplesSeen;
+        /* Running column mean and sum of squared deviations */
+        private final double[] mean;
+        private final double[] m2;
+        /* Unit loading directions, one array of length nVars per component */
+        private double[][] components;
+        private double[] singularValues;
+        private String[] columnNames;
+        private Scaling scaling = Scaling.MEAN_CENTER;
+        /* Column divisors fixed from the first batch, null when only centering */
+        private double[] scale;
+
+        public IncrementalPCA(int nVars, int nComponents) {
+                if (nComponents < 1 || nComponents > nVars) {
+                        throw new IllegalArgumentException("Number of components must be between 1 and " + nVars);
+                }
+                this.nVars = nVars;
+                this.nComponents = nComponents;
+                mean = new double[nVars];
+                m2 = new double[nVars];
+                components = new double[0][];
+                singularValues = new double[0];
+        }
+
+        public void setColumnNames(String[] columnNames) {
+                this.columnNames = columnNames;
+        }
+
+        /**
+         * Sets the column scaling, before the first batch. NONE and
+         * MEAN_CENTER both only center; the other scalings divide by a scale
+         * computed from the first batch, which should hold enough samples to
+         * estimate it.
+         */
+        public void setScaling(Scaling scaling) {
+                if (nSamplesSeen > 0) {
+                        throw new IllegalStateException("The scaling must be set before the first batch");
+                }
+                this.scaling = scaling;
+        }
+
+        public Scaling getScaling() {
+                return scaling;
+        }
+
+        public void partialFit(Matrix batch) {
+                partialFit(batch.getArray());
+        }
+
+        /**
+         * Updates the statistics and loadings with a batch of new samples.
+         * @param batch Rows are samples, there must be one column per variable
+         */
+        public void partialFit(double[][] batch) {
+                for (int i = 0; i < batch.length; i++) {
+                        if (batch[i].length != nVars) {
+                                throw new IllegalArgumentException("Sample " + i + " has " + batch[i].length
+                                        + " values, expected " + nVars);
+                        }
+                }
+                if (nSamplesSeen == 0 && batch.length > 0 && scaling != Scaling.NONE
+                        && scaling != Scaling.MEAN_CENTER) {
+                        Standardizer first = new Standardizer(scaling);
+                        first.fit(batch, null);
+                        scale = first.getScale();
+                }
+                int chunk = nComponents;
+                for (int from = 0; from < batch.length; from += chunk) {
+                        update(scaled(batch, from, Math.min(batch.length, from + chunk)));
+                }
+        }
+
+        /**
+         * @return Rows from .. to - 1 of batch divided by the scale, or the
+         * rows themselves when only centering
+         */
+        private double[][] scaled(double[][] batch, int from, int to) {
+                double[][] rows = new double[to - from][];
+                for (int i = from; i < to; i++) {
+                        if (scale == null) {
+                                rows[i - from] = batch[i];
+                        } else {
+                                double[] row = new double[nVars];
+                                for (int j = 0; j < nVars; j++) {
+                                        row[j] = batch[i][j] / scale[j];
+                                }
+                                rows[i - from] = row;
+                        }
+                }
+                return rows;
+        }
+
+        /**
+         * Merges a chunk of at most k scaled rows.
+         */
+        private void update(double[][] chunk) {
+                int b = chunk.length;
+
+                // mean of the chunk and the merged mean and variance (Chan et al.)
+                double[] chunkMean = new double[nVars];
+                for (int i = 0; i < b; i++) {
+                        double[] row = chunk[i];
+                        for (int j = 0; j < nVars; j++) {
+                                chunkMean[j] += row[j];
+                        }
+                }
+                for (int j = 0; j < nVars; j++) {
+                        chunkMean[j] /= b;
+                }
+                long n = nSamplesSeen;
+                long total = n + b;
+                double correction = Math.sqrt((double) n * b / total);
+
+                // rows: current components scaled by their singular values,
+                // the centered chunk and the mean correction
+                int k = components.length;
+                int r = k + b + (n > 0 ? 1 : 0);
+                double[][] M = new double[r][];
+                for (int c = 0; c < k; c++) {
+                        double[] row = new double[nVars];
+                        for (int j = 0; j < nVars; j++) {
+                                row[j] = singularValues[c] * components[c][j];
+                        }
+                        M[c] = row;
+                }
+                for (int i = 0; i < b; i++) {
+                        double[] row = new double[nVars];
+                        double[] x = chunk[i];
+                        for (int j = 0; j < nVars; j++) {
+                                row[j] = x[j] - chunkMean[j];
+                        }
+                        M[k + i] = row;
+                }
+                if (n > 0) {
+                        double[] row = new double[nVars];
+                        for (int j = 0; j < nVars; j++) {
+                                row[j] = correction * (mean[j] - chunkMean[j]);
+                        }
+                        M[r - 1] = row;
+                }
+
+                for (int j = 0; j < nVars; j++) {
+                        double chunkM2 = 0;
+                        for (int i = 0; i < b; i++) {
+                                double d = chunk[i][j] - chunkMean[j];
+                                chunkM2 += d * d;
+                        }
+                        double delta = chunkMean[j] - mean[j];
+                        m2[j] += chunkM2 + delta * delta * n * b / total;
+                        mean[j] += delta * b / total;
+                }
+                nSamplesSeen = total;
+
+                // SVD of M through the eigendecomposition of the small r x r M*M'
+                double[][] G = new double[r][r];
+                MatrixKernels.multiplyTranspose(M, G, null);
+                EigenvalueDecomposition eig = new Matrix(G).eig();
+                double[] values = eig.getRealEigenvalues();
+                double[][] W = eig.getV().getArray();
+
+                int newK = Math.min(nComponents, r);
+                double[][] newComponents = new double[newK][];
+                double[] newValues = new double[newK];
+                int found = 0;
+                for (int c = 0; c < newK; c++) {
+                        double value = values[r - 1 - c];
+                        if (value <= 0) {
+                                break;
+                        }
+                        double sigma = Math.sqrt(value);
+                        double[] v = new double[nVars];
+                        for (int i = 0; i < r; i++) {
+                                double w = W[i][r - 1 - c] / sigma;
+                                double[] row = M[i];
+                                for (int j = 0; j < nVars; j++) {
+                                        v[j] += w * row[j];
+                                }
+                        }
+                        newComponents[c] = v;
+                        newValues[c] = sigma;
+                        found++;
+                }
+                components = new double[found][];
+                singularValues = new double[found];
+                System.arraycopy(newComponents, 0, components, 0, found);
+                System.arraycopy(newValues, 0, singularValues, 0, found);
+        }
+
+        /**
+         * @return Number of samples merged into the model
+         */
+        public long getSampleCount() {
+                return nSamplesSeen;
+        }
+
+        /**
+         * @return Running column means, in the units of the data
+         */
+        public double[] getMean() {
+                double[] m = mean.clone();
+                if (scale != null) {
+                        for (int j = 0; j < nVars; j++) {
+                                m[j] *= scale[j];
+                        }
+                }
+                return m;
+        }
+
+        /**
+         * @return Running column standard deviations, in the units of the data
+         */
+        public double[] getStandardDeviation() {
+                double[] sd = new double[nVars];
+                if (nSamplesSeen > 1) {
+                        for (int j = 0; j < nVars; j++) {
+                                sd[j] = Math.sqrt(m2[j] / (nSamplesSeen - 1)) * (scale != null ? scale[j] : 1);
+                        }
+                }
+                return sd;
+        }
+
+        /**
+         * @return Column divisors fixed from the first batch, all 1 when the
+         * columns are only centered
+         */
+        public double[] getScale() {
+                if (scale == null) {
+                        double[] ones = new double[nVars];
+                        Arrays.fill(ones, 1);
+                        return ones;
+                }
+                return scale.clone();
+        }
+
+        /**
+         * Unlike PCA.getPCs() the vectors are the unit loading directions over
+         * the variables, since the scores of past samples are not kept. The
+         * eigenvalues are the sums of squares of the centered and scaled
+         * data, as in PCA.
+         */
+        public List<PrincipleComponent> getPCs() {
+                List<PrincipleComponent> pcs = new ArrayList<PrincipleComponent>();
+                for (int c = 0; c < components.length; c++) {
+                        pcs.add(new PrincipleComponent(singularValues[c] * singularValues[c], components[c].clone()));
+                }
+                return pcs;
+        }
+
+        /**
+         * Projects samples on the current loading directions. The projections
+         * are divided by the singular values, so that, as with PCA, the scores
+         * of all samples merged so far form unit vectors.
+         * @return Scores matrix with one row per sample and one column per
+         * component
+         */
+        public Matrix scores(double[][] X) {
+                double[][] scores = new double[X.length][components.length];
+                for (int i = 0; i < X.length; i++) {
+                        double[] x = X[i];
+                        for (int c = 0; c < components.length; c++) {
+                                double[] v = components[c];
+                                double sum = 0;
+                                for (int j = 0; j < nVars; j++) {
+                                        double value = scale != null ? x[j] / scale[j] : x[j];
+                                        sum += (value - mean[j]) * v[j];
+                                }
+                                scores[i][c] = sum / singularValues[c];
+                        }
+                }
+                return new Matrix(scores, X.length, components.length);
+        }
+
+        public PlotPanel loadingsplot(String Xlabel, String Ylabel) {
+                checkPlottable();
+                double[][] loadings = new double[nVars][components.length];
+                for (int c = 0; c < components.length; c++) {
+                        for (int j = 0; j < nVars; j++) {
+                                loadings[j][c] = singularValues[c] * components[c][j];
+                        }
+                }
+                PCADataset dataset = new PCADataset(new Matrix(loadings, nVars, components.length),
+                        columnNames, Xlabel, Ylabel);
+                return new PlotPanel(dataset);
+        }
+
+        /**
+         * Scores plot of the given samples, which do not need to be the ones
+         * used for fitting.
+         */
+        public PlotPanel scoresplot(double[][] X, String[] rowNames, String Xlabel, String Ylabel) {
+                checkPlottable();
+                PCADataset dataset = new PCADataset(scores(X), rowNames, Xlabel, Ylabel);
+                return new PlotPanel(dataset);
+        }
+
+        private void checkPlottable() {
+                if (components.length < 2) {
+                        throw new IllegalStateException("The plots need at least two components, the model has "
+                                + components.length);
+                }
+        }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Positive semi-definite kernel used by KernelPCA. Instances are immutable
+ * and can be shared between threads.
+ */
+public abstract class KernelFunction {
+
+        /**
+         * @return k(x, y)
+         */
+        public abstract double compute(double[] x, double[] y);
+
+        /**
+         * Gaussian kernel exp(-gamma ||x - y||^2).
+         */
+        public static KernelFunction rbf(final double gamma) {
+                if (gamma <= 0) {
+                        throw new IllegalArgumentException("gamma must be positive");
+                }
+                return new KernelFunction() {
+
+                        @Override
+                        public double compute(double[] x, double[] y) {
+                                return Math.exp(-gamma * MatrixKernels.squaredDistance(x, y));
+                        }
+                };
+        }
+
+        /**
+         * Polynomial kernel (x . y + coef0)^degree.
+         */
+        public static KernelFunction polynomial(final int degree, final double coef0) {
+                if (degree < 1) {
+                        throw new IllegalArgumentException("degree must be at least 1");
+                }
+                return new KernelFunction() {
+
+                        @Override
+                        public double compute(double[] x, double[] y) {
+                                double base = MatrixKernels.dot(x, y) + coef0;
+                                double value = base;
+                                for (int d = 1; d < degree; d++) {
+                                        value *= base;
+                                }
+                                return value;
+                        }
+                };
+        }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Kernel PCA with the Nystrom approximation. Instead of the n x n kernel
+ * matrix, only the kernel values between every sample and m landmark
+ * samples drawn at random are computed. With K_mm = U L U' the kernel
+ * between the landmarks, every sample gets the features
+ * phi(x) = k(x, landmarks) U L^-1/2, whose dot products approximate the
+ * kernel, and linear PCA of the centered features approximates kernel PCA.
+ * The memory is O(n m) and the work O(n m (p + m)) for p variables.
+ *
+ * The kernel values are computed in row blocks on a fork-join pool, and the
+ * features are decomposed with PCA.covariance, so the results, the scores
+ * plot and transform() behave as for a linear model.
+ */
+public class KernelPCA {
+
+        /* Eigenvalues of K_mm below this fraction of the largest are dropped */
+        private static final double NULL_SPACE = 1e-10;
+        private final KernelFunction kernel;
+        private final int landmarkCount;
+        private final int maxComponents;
+        private Scaling scaling = Scaling.NONE;
+        private int parallelism = 1;
+        /* Seed of the landmark sample, fixed so that fits are reproducible */
+        private long seed = PCA.RANDOM_SEED;
+        private Standardizer standardizer;
+        /* Standardized landmark samples */
+        private double[][] landmarks;
+        /* U L^-1/2, one row per landmark */
+        private double[][] W;
+        /* Feature means subtracted before the linear PCA */
+        private double[] featureMean;
+        private PCA pca;
+
+        /**
+         * @param landmarks Number of landmark samples m, which bounds the rank
+         * of the approximation
+         * @param maxComponents Largest number of components computed
+         */
+        public KernelPCA(KernelFunction kernel, int landmarks, int maxComponents) {
+                if (landmarks < 1 || maxComponents < 1) {
+                        throw new IllegalArgumentException("Need at least 1 landmark and 1 component");
+                }
+                this.kernel = kernel;
+                this.landmarkCount = landmarks;
+                this.maxComponents = maxComponents;
+        }
+
+        /**
+         * Column preprocessing applied to the samples before the kernel.
+         */
+        public void setScaling(Scaling scaling) {
+                this.scaling = scaling;
+        }
+
+        /**
+         * @param parallelism Number of threads evaluating the kernel, 1 runs
+         * on the calling thread
+         */
+        public void setParallelism(int parallelism) {
+                this.parallelism = parallelism;
+        }
+
+        /**
+         * @param seed Seed of the random choice of the landmarks
+         */
+        public void setSeed(long seed) {
+                this.seed = seed;
+        }
+
+        /**
+         * @param X Samples, one row per sample and one column per variable
+         */
+        public void fit(Matrix X, String[] rowNames) {
+                double[][] x = X.getArray();
+                int rows = x.length;
+                int m = Math.min(landmarkCount, rows);
+                ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+                try {
+                        standardizer = null;
+                        if (scaling != Scaling.NONE) {
+                                standardizer = new Standardizer(scaling);
+                                standardizer.fit(x, pool);
+                        }
+                        landmarks = new double[m][];
+                        int[] sample = sample(rows, m, seed);
+                        for (int l = 0; l < m; l++) {
+                                landmarks[l] = standardize(x[sample[l]]);
+                        }
+
+                        double[][] K = new double[m][m];
+                        evaluate(landmarks, K, pool);
+                        EigenvalueDecomposition eig = new Matrix(K).eig();
+                        double[] values = eig.getRealEigenvalues();
+                        double[][] U = eig.getV().getArray();
+                        double largest = values[m - 1];
+                        int rank = 0;
+                        while (rank < m && values[m - 1 - rank] > NULL_SPACE * largest) {
+                                rank++;
+                        }
+                        W = new double[m][rank];
+                        for (int c = 0; c < rank; c++) {
+                                double s = 1 / Math.sqrt(values[m - 1 - c]);
+                                for (int l = 0; l < m; l++) {
+                                        W[l][c] = U[l][m - 1 - c] * s;
+                                }
+                        }
+
+                        double[][] features = features(x, pool);
+                        featureMean = new double[rank];
+                        for (double[] f : features) {
+                                for (int c = 0; c < rank; c++) {
+                                        featureMean[c] += f[c];
+                                }
+                        }
+                        for (int c = 0; c < rank; c++) {
+                                featureMean[c] /= rows;
+                        }
+                        for (double[] f : features) {
+                                for (int c = 0; c < rank; c++) {
+                                        f[c] -= featureMean[c];
+                                }
+                        }
+                        pca = new PCA(rows, rank, maxComponents);
+                        // the features are centered above, so T^2 is known
+                        pca.setCentered(true);
+                        pca.covariance(new Matrix(features, rows, rank), null, rowNames, parallelism);
+                } finally {
+                        if (pool != null) {
+                                pool.shutdown();
+                        }
+                }
+        }
+
+        /**
+         * @return Linear model of the centered Nystrom features
+         */
+        public PCA getModel() {
+                return pca;
+        }
+
+        public PCAResult getResult() {
+                return pca.getResult();
+        }
+
+        /**
+         * Projects new samples, in the scale of the fitted scores.
+         * @return Scores with one row per sample and one column per component
+         */
+        public double[][] transform(double[][] X) {
+                double[][] features = features(X, null);
+                for (double[] f : features) {
+                        for (int c = 0; c < f.length; c++) {
+                                f[c] -= featureMean[c];
+                        }
+                }
+                return pca.transform(features);
+        }
+
+        public PlotPanel scoresplot(String Xlabel, String Ylabel) {
+                return new PlotPanel(pca.getResult().scoresDataset(0, 1, Xlabel, Ylabel));
+        }
+
+        /**
+         * @return Features phi(x) of the given raw samples
+         */
+        private double[][] features(final double[][] X, ForkJoinPool pool) {
+                final double[][] features = new double[X.length][];
+                MatrixKernels.forRange(X.length, pool, new MatrixKernels.RangeBody() {
+
+                        public void run(int from, int to) {
+                                featureRows(X, features, from, to);
+                        }
+                });
+                return features;
+        }
+
+        private void featureRows(double[][] X, double[][] features, int from, int to) {
+                int m = landmarks.length;
+                int rank = W.length > 0 ? W[0].length : 0;
+                double[] k = new double[m];
+                for (int i = from; i < to; i++) {
+                        double[] x = standardize(X[i]);
+                        for (int l = 0; l < m; l++) {
+                                k[l] = kernel.compute(x, landmarks[l]);
+                        }
+                        double[] f = new double[rank];
+                        for (int l = 0; l < m; l++) {
+                                double kl = k[l];
+                                double[] w = W[l];
+                                for (int c = 0; c < rank; c++) {
+                                        f[c] += kl * w[c];
+                                }
+                        }
+                        features[i] = f;
+                }
+        }
+
+        /**
+         * Fills the symmetric kernel matrix of the landmarks. Row a computes
+         * the values of columns 0 .. a and mirrors them, so blocks of rows
+         * never write the same element.
+         */
+        private void evaluate(final double[][] L, final double[][] K, ForkJoinPool pool) {
+                MatrixKernels.forRange(L.length, pool, new MatrixKernels.RangeBody() {
+
+                        public void run(int from, int to) {
+                                kernelRows(L, K, from, to);
+                        }
+                });
+        }
+
+        private void kernelRows(double[][] L, double[][] K, int from, int to) {
+                for (int a = from; a < to; a++) {
+                        for (int b = 0; b <= a; b++) {
+                                K[a][b] = kernel.compute(L[a], L[b]);
+                                K[b][a] = K[a][b];
+                        }
+                }
+        }
+
+        /**
+         * @return Copy of x with the scaling of the fit applied
+         */
+        private double[] standardize(double[] x) {
+                double[] copy = x.clone();
+                if (standardizer != null) {
+                        standardizer.apply(copy);
+                }
+                return copy;
+        }
+
+        /**
+         * @return m distinct row indexes drawn with a partial Fisher-Yates
+         * shuffle
+         */
+        private static int[] sample(int rows, int m, long seed) {
+                int[] index = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                        index[i] = i;
+                }
+                Random random = new Random(seed);
+                int[] sample = new int[m];
+                for (int l = 0; l < m; l++) {
+                        int r = l + random.nextInt(rows - l);
+                        int swap = index[l];
+                        index[l] = index[r];
+                        index[r] = swap;
+                        sample[l] = index[l];
+                }
+                return sample;
+        }
+}
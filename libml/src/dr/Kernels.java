@@ -0,0 +1,89 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Inner loops of the dense kernels: dot products, axpy updates and the row
+ * and column passes of a matrix-vector product. The implementation is chosen
+ * once per JVM. VectorKernels, written against the JDK Vector API and kept in
+ * libml/src-vector so that src compiles with a plain javac, is used when it
+ * is on the class path and the jdk.incubator.vector module is available
+ * (java --add-modules jdk.incubator.vector), and ScalarKernels otherwise.
+ * Setting the system property dr.kernels=scalar forces the scalar loops.
+ */
+abstract class Kernels {
+
+        static final Kernels INSTANCE = load();
+        /* Columns of y accumulated together by gemvTranspose (16 KB) */
+        private static final int COLUMN_TILE = 2048;
+
+        /**
+         * @return a . b over the length of a
+         */
+        abstract double dot(double[] a, double[] b);
+
+        /**
+         * @return |a - b|^2 over the length of a
+         */
+        abstract double squaredDistance(double[] a, double[] b);
+
+        /**
+         * y[from .. to) += alpha * x[from .. to)
+         */
+        abstract void axpy(double alpha, double[] x, double[] y, int from, int to);
+
+        /**
+         * y[i] = A[i] . x for the rows from .. to
+         */
+        void gemv(double[][] A, double[] x, double[] y, int from, int to) {
+                for (int i = from; i < to; i++) {
+                        y[i] = dot(A[i], x);
+                }
+        }
+
+        /**
+         * y[from .. to) = (A' x)[from .. to), computed on the row-major A
+         * without a transposed copy. The columns are processed in tiles so
+         * that the part of y being accumulated stays in the L1 cache while
+         * every row streams through it with one axpy per row and tile.
+         */
+        void gemvTranspose(double[][] A, double[] x, double[] y, int from, int to) {
+                for (int j = from; j < to; j++) {
+                        y[j] = 0;
+                }
+                for (int tile = from; tile < to; tile += COLUMN_TILE) {
+                        int tileEnd = Math.min(to, tile + COLUMN_TILE);
+                        for (int i = 0; i < A.length; i++) {
+                                axpy(x[i], A[i], y, tile, tileEnd);
+                        }
+                }
+        }
+
+        private static Kernels load() {
+                if (!"scalar".equals(System.getProperty("dr.kernels"))) {
+                        try {
+                                return (Kernels) Class.forName("dr.VectorKernels").getDeclaredConstructor().newInstance();
+                        } catch (Exception e) {
+                                // not compiled in
+                        } catch (LinkageError e) {
+                                // jdk.incubator.vector is not available in this JVM
+                        }
+                }
+                return new ScalarKernels();
+        }
+}
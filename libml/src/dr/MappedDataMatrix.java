@@ -0,0 +1,247 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Data matrix stored in a binary file of doubles without header, in row-major
+ * or column-major order. The file is memory-mapped in windows of whole rows
+ * (or columns) and every product streams over it in cache-sized blocks that
+ * are copied into one reused buffer, so only O(rows + cols) values are kept
+ * on the heap. Instances are not thread-safe.
+ */
+public class MappedDataMatrix implements DataMatrix {
+
+        /* Bytes copied from the mapping at a time */
+        private static final int BLOCK_BYTES = 256 * 1024;
+        private final int rows;
+        private final int cols;
+        private final boolean rowMajor;
+        /* Length of a stored vector: a row when rowMajor, otherwise a column */
+        private final int vectorLength;
+        private final int vectorCount;
+        private final int vectorsPerWindow;
+        private final int vectorsPerBlock;
+        private final DoubleBuffer[] windows;
+        private final double[] block;
+
+        /**
+         * Maps a big-endian file, as written by DataOutputStream or by write().
+         */
+        public MappedDataMatrix(File file, int rows, int cols, boolean rowMajor) throws IOException {
+                this(file, rows, cols, rowMajor, ByteOrder.BIG_ENDIAN);
+        }
+
+        public MappedDataMatrix(File file, int rows, int cols, boolean rowMajor, ByteOrder order) throws IOException {
+                this.rows = rows;
+                this.cols = cols;
+                this.rowMajor = rowMajor;
+                vectorLength = rowMajor ? cols : rows;
+                vectorCount = rowMajor ? rows : cols;
+                long vectorBytes = 8L * vectorLength;
+                vectorsPerWindow = (int) Math.max(1, Integer.MAX_VALUE / vectorBytes);
+                vectorsPerBlock = (int) Math.max(1, BLOCK_BYTES / vectorBytes);
+                block = new double[Math.min(vectorsPerBlock, vectorCount) * vectorLength];
+
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                        FileChannel channel = raf.getChannel();
+                        if (channel.size() != vectorBytes * vectorCount) {
+                                throw new IOException(file + " has " + channel.size() + " bytes, expected "
+                                        + vectorBytes * vectorCount + " for a " + rows + " x " + cols + " matrix");
+                        }
+                        int nWindows = (vectorCount + vectorsPerWindow - 1) / vectorsPerWindow;
+                        windows = new DoubleBuffer[nWindows];
+                        for (int w = 0; w < nWindows; w++) {
+                                long first = (long) w * vectorsPerWindow;
+                                long count = Math.min(vectorsPerWindow, vectorCount - first);
+                                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, first * vectorBytes,
+                                        count * vectorBytes).order(order).asDoubleBuffer();
+                        }
+                } finally {
+                        // the mappings stay valid after the channel is closed
+                        raf.close();
+                }
+        }
+
+        /**
+         * Writes X in row-major order as big-endian doubles, the format read
+         * by MappedDataMatrix(file, rows, cols, true).
+         */
+        public static void write(double[][] X, File file) throws IOException {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                try {
+                        for (int i = 0; i < X.length; i++) {
+                                for (int j = 0; j < X[i].length; j++) {
+                                        out.writeDouble(X[i][j]);
+                                }
+                        }
+                } finally {
+                        out.close();
+                }
+        }
+
+        public int getRowCount() {
+                return rows;
+        }
+
+        public int getColumnCount() {
+                return cols;
+        }
+
+        /**
+         * Copies stored vectors first .. first + count into the block buffer.
+         * A block never crosses a window.
+         * @return Number of vectors read
+         */
+        private int readBlock(int first) {
+                int w = first / vectorsPerWindow;
+                int inWindow = first - w * vectorsPerWindow;
+                int windowVectors = windows[w].capacity() / vectorLength;
+                int count = Math.min(vectorsPerBlock, windowVectors - inWindow);
+                DoubleBuffer buffer = windows[w].duplicate();
+                buffer.position(inWindow * vectorLength);
+                buffer.get(block, 0, count * vectorLength);
+                return count;
+        }
+
+        public void multiply(double[] x, double[] y) {
+                if (!rowMajor) {
+                        Arrays.fill(y, 0);
+                }
+                for (int first = 0; first < vectorCount;) {
+                        int count = readBlock(first);
+                        for (int v = 0; v < count; v++) {
+                                int offset = v * vectorLength;
+                                if (rowMajor) {
+                                        double sum = 0;
+                                        for (int j = 0; j < cols; j++) {
+                                                sum += block[offset + j] * x[j];
+                                        }
+                                        y[first + v] = sum;
+                                } else {
+                                        double xj = x[first + v];
+                                        for (int i = 0; i < rows; i++) {
+                                                y[i] += block[offset + i] * xj;
+                                        }
+                                }
+                        }
+                        first += count;
+                }
+        }
+
+        public void transposeMultiply(double[] x, double[] y) {
+                if (rowMajor) {
+                        Arrays.fill(y, 0);
+                }
+                for (int first = 0; first < vectorCount;) {
+                        int count = readBlock(first);
+                        for (int v = 0; v < count; v++) {
+                                int offset = v * vectorLength;
+                                if (rowMajor) {
+                                        double xi = x[first + v];
+                                        for (int j = 0; j < cols; j++) {
+                                                y[j] += block[offset + j] * xi;
+                                        }
+                                } else {
+                                        double sum = 0;
+                                        for (int i = 0; i < rows; i++) {
+                                                sum += block[offset + i] * x[i];
+                                        }
+                                        y[first + v] = sum;
+                                }
+                        }
+                        first += count;
+                }
+        }
+
+        public void multiply(double[][] B, double[][] C) {
+                int l = B[0].length;
+                for (int i = 0; i < rows; i++) {
+                        Arrays.fill(C[i], 0);
+                }
+                for (int first = 0; first < vectorCount;) {
+                        int count = readBlock(first);
+                        for (int v = 0; v < count; v++) {
+                                int offset = v * vectorLength;
+                                for (int e = 0; e < vectorLength; e++) {
+                                        double a = block[offset + e];
+                                        // element (i, j) of X
+                                        double[] b = rowMajor ? B[e] : B[first + v];
+                                        double[] c = rowMajor ? C[first + v] : C[e];
+                                        for (int k = 0; k < l; k++) {
+                                                c[k] += a * b[k];
+                                        }
+                                }
+                        }
+                        first += count;
+                }
+        }
+
+        public void transposeMultiply(double[][] B, double[][] C) {
+                int l = B[0].length;
+                for (int j = 0; j < cols; j++) {
+                        Arrays.fill(C[j], 0);
+                }
+                for (int first = 0; first < vectorCount;) {
+                        int count = readBlock(first);
+                        for (int v = 0; v < count; v++) {
+                                int offset = v * vectorLength;
+                                for (int e = 0; e < vectorLength; e++) {
+                                        double a = block[offset + e];
+                                        double[] b = rowMajor ? B[first + v] : B[e];
+                                        double[] c = rowMajor ? C[e] : C[first + v];
+                                        for (int k = 0; k < l; k++) {
+                                                c[k] += a * b[k];
+                                        }
+                                }
+                        }
+                        first += count;
+                }
+        }
+
+        public void getRows(int from, int to, double[][] dst) {
+                if (rowMajor) {
+                        for (int i = from; i < to;) {
+                                int count = Math.min(readBlock(i), to - i);
+                                for (int v = 0; v < count; v++) {
+                                        System.arraycopy(block, v * cols, dst[i - from + v], 0, cols);
+                                }
+                                i += count;
+                        }
+                } else {
+                        for (int j = 0; j < cols; j++) {
+                                DoubleBuffer buffer = windows[j / vectorsPerWindow].duplicate();
+                                int offset = (j % vectorsPerWindow) * rows;
+                                for (int i = from; i < to; i++) {
+                                        dst[i - from][j] = buffer.get(offset + i);
+                                }
+                        }
+                }
+        }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Dense matrix-vector and matrix-block kernels used by the NIPALS iteration
+ * and the randomized SVD. The matrix is given as the row-major array of a
+ * Jama Matrix (Matrix.getArray()), so no copies are made. When a pool is
+ * given the work is split into row or column blocks and run with fork-join,
+ * otherwise it runs on the calling thread. Every output element is written
+ * by exactly one task, so the parallel and serial results are identical.
+ */
+final class MatrixKernels {
+
+        /* Smallest block of indexes run by one task, also the tile of transpose */
+        private static final int MIN_BLOCK = 64;
+        private static final Kernels KERNELS = Kernels.INSTANCE;
+
+        private MatrixKernels() {
+        }
+
+        /**
+         * Work on the index range from .. to - 1 of a loop split by forRange.
+         */
+        interface RangeBody {
+
+                void run(int from, int to);
+        }
+
+        /**
+         * Runs body over 0 .. size - 1, on the calling thread when pool is
+         * null and otherwise split by fork-join into blocks of at least
+         * MIN_BLOCK indexes, about four per thread of the pool.
+         */
+        static void forRange(int size, ForkJoinPool pool, RangeBody body) {
+                int grain = pool == null ? size : Math.max(MIN_BLOCK, size / (4 * pool.getParallelism()));
+                forRange(size, grain, pool, body);
+        }
+
+        /**
+         * Runs body over 0 .. size - 1 in blocks of at most grain indexes,
+         * for loops whose every index is already a large piece of work.
+         */
+        static void forRange(int size, int grain, ForkJoinPool pool, RangeBody body) {
+                if (pool == null) {
+                        body.run(0, size);
+                } else {
+                        pool.invoke(new RangeTask(body, 0, size, grain));
+                }
+        }
+
+        /**
+         * y = A * x
+         */
+        static void multiply(final double[][] A, final double[] x, final double[] y, ForkJoinPool pool) {
+                forRange(A.length, pool, new RangeBody() {
+
+                        public void run(int from, int to) {
+                                KERNELS.gemv(A, x, y, from, to);
+                        }
+                });
+        }
+
+        /**
+         * y = A' * x, computed without forming the transpose of A
+         */
+        static void transposeMultiply(final double[][] A, final double[] x, final double[] y, ForkJoinPool pool) {
+                forRange(y.length, pool, new RangeBody() {
+
+                        public void run(int from, int to) {
+                                KERNELS.gemvTranspose(A, x, y, from, to);
+                        }
+                });
+        }
+
+        /**
+         * A = A - u * v' (rank-1 deflation in place)
+         */
+        static void subtractOuterProduct(final double[][] A, final double[] u, final double[] v, ForkJoinPool pool) {
+                forRange(A.length, pool, new RangeBody() {
+
+                        public void run(int from, int to) {
+                                for (int i = from; i < to; i++) {
+                                        KERNELS.axpy(-u[i], v, A[i], 0, v.length);
+                                }
+                        }
+                });
+        }
+
+        /**
+         * C = A * B, where B has few columns (a block of vectors)
+         */
+        static void multiply(final double[][] A, final double[][] B, final double[][] C, ForkJoinPool pool) {
+                forRange(A.length, pool, new RangeBody() {
+
+                        public void run(int from, int to) {
+                                multiplyBlockRows(A, B, C, from, to);
+                        }
+                });
+        }
+
+        /**
+         * C = A' * B, where B has few columns, computed without forming the
+         * transpose of A
+         */
+        static void transposeMultiply(final double[][] A, final double[][] B, final double[][] C, ForkJoinPool pool) {
+                forRange(C.length, pool, new RangeBody() {
+
+                        public void run(int from, int to) {
+                                transposeMultiplyBlockColumns(A, B, C, from, to);
+                        }
+                });
+        }
+
+        /**
+         * G = A * A' (Gram matrix of the rows of A). Only the upper triangle
+         * is computed, each row's task also writes the mirrored entries.
+         */
+        static void multiplyTranspose(final double[][] A, final double[][] G, ForkJoinPool pool) {
+                forRange(A.length, pool, new RangeBody() {
+
+                        public void run(int from, int to) {
+                                gramRows(A, G, from, to);
+                        }
+                });
+        }
+
+        /**
+         * @return Column-major copy of A (A transposed), copied in square
+         * tiles so that both the reads and the writes stay in cache
+         */
+        static double[][] transpose(double[][] A) {
+                int rows = A.length;
+                int cols = A[0].length;
+                double[][] T = new double[cols][rows];
+                for (int i0 = 0; i0 < rows; i0 += MIN_BLOCK) {
+                        int i1 = Math.min(rows, i0 + MIN_BLOCK);
+                        for (int j0 = 0; j0 < cols; j0 += MIN_BLOCK) {
+                                int j1 = Math.min(cols, j0 + MIN_BLOCK);
+                                for (int i = i0; i < i1; i++) {
+                                        double[] row = A[i];
+                                        for (int j = j0; j < j1; j++) {
+                                                T[j][i] = row[j];
+                                        }
+                                }
+                        }
+                }
+                return T;
+        }
+
+        /**
+         * @return a . b
+         */
+        static double dot(double[] a, double[] b) {
+                return KERNELS.dot(a, b);
+        }
+
+        /**
+         * @return |a - b|^2
+         */
+        static double squaredDistance(double[] a, double[] b) {
+                return KERNELS.squaredDistance(a, b);
+        }
+
+        private static void multiplyBlockRows(double[][] A, double[][] B, double[][] C, int from, int to) {
+                for (int i = from; i < to; i++) {
+                        double[] row = A[i];
+                        double[] c = C[i];
+                        Arrays.fill(c, 0);
+                        for (int j = 0; j < row.length; j++) {
+                                double aij = row[j];
+                                double[] b = B[j];
+                                for (int l = 0; l < c.length; l++) {
+                                        c[l] += aij * b[l];
+                                }
+                        }
+                }
+        }
+
+        private static void transposeMultiplyBlockColumns(double[][] A, double[][] B, double[][] C, int from, int to) {
+                for (int j = from; j < to; j++) {
+                        Arrays.fill(C[j], 0);
+                }
+                for (int i = 0; i < A.length; i++) {
+                        double[] row = A[i];
+                        double[] b = B[i];
+                        for (int j = from; j < to; j++) {
+                                double aij = row[j];
+                                double[] c = C[j];
+                                for (int l = 0; l < c.length; l++) {
+                                        c[l] += aij * b[l];
+                                }
+                        }
+                }
+        }
+
+        private static void gramRows(double[][] A, double[][] G, int from, int to) {
+                for (int i = from; i < to; i++) {
+                        double[] a = A[i];
+                        for (int j = i; j < A.length; j++) {
+                                double sum = KERNELS.dot(a, A[j]);
+                                G[i][j] = sum;
+                                G[j][i] = sum;
+                        }
+                }
+        }
+
+        /**
+         * Splits a range in halves until the blocks are at most grain long.
+         */
+        private static class RangeTask extends RecursiveAction {
+
+                private static final long serialVersionUID = 1L;
+                private final RangeBody body;
+                private final int from, to, grain;
+
+                RangeTask(RangeBody body, int from, int to, int grain) {
+                        this.body = body;
+                        this.from = from;
+                        this.to = to;
+                        this.grain = grain;
+                }
+
+                @Override
+                protected void compute() {
+                        if (to - from <= grain) {
+                                body.run(from, to);
+                        } else {
+                                int mid = (from + to) >>> 1;
+                                invokeAll(new RangeTask(body, from, mid, grain), new RangeTask(body, mid, to, grain));
+                        }
+                }
+        }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated buffers for the NIPALS iteration: the residual matrix, which
+ * is deflated in place, and the score and loading vectors. The same buffers
+ * are used for every iteration and every component, and for later fits. The
+ * residual rows are kept for any later problem with the same number of
+ * columns and at most as many rows.
+ */
+class NipalsWorkspace {
+
+        /* Loading vector, one value per column */
+        double[] t;
+        /* Loading vector of the previous iteration */
+        double[] tOld;
+        /* Score vector, one value per row */
+        double[] p;
+        /* Rows of the residual, null until the first dense fit */
+        private double[][] residualRows;
+
+        NipalsWorkspace(int rows, int cols) {
+                t = new double[cols];
+                tOld = new double[cols];
+                p = new double[rows];
+        }
+
+        /**
+         * Makes sure the vectors fit a rows x cols problem. The kernels take
+         * the vector lengths as the problem size, so the vectors, which are
+         * small next to the residual, are reallocated when the size changes.
+         */
+        void ensureCapacity(int rows, int cols) {
+                if (t.length != cols) {
+                        t = new double[cols];
+                        tOld = new double[cols];
+                }
+                if (p.length != rows) {
+                        p = new double[rows];
+                }
+        }
+
+        /**
+         * @return true when the residual buffer can be reused for a rows x
+         * cols problem
+         */
+        boolean canHold(int rows, int cols) {
+                return residualRows != null && residualRows.length >= rows
+                        && (rows == 0 || residualRows[0].length == cols);
+        }
+
+        /**
+         * @return rows x cols array for the residual. The row arrays of an
+         * earlier problem with the same number of columns and at least as
+         * many rows are reused, only the array holding them is new when
+         * there are fewer rows. The rows are not cleared.
+         */
+        double[][] residual(int rows, int cols) {
+                if (!canHold(rows, cols)) {
+                        residualRows = new double[rows][cols];
+                }
+                if (residualRows.length == rows) {
+                        return residualRows;
+                }
+                return Arrays.copyOf(residualRows, rows);
+        }
+
+        /**
+         * Exchanges t and tOld so that the next iteration writes over the
+         * oldest loading vector.
+         */
+        void swapLoadings() {
+                double[] tmp = tOld;
+                tOld = t;
+                t = tmp;
+        }
+}
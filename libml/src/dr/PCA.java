@@ -17,11 +17,18 @@
  */
 package dr;
 
+import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
 import figs.Chart;
 import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.JFrame;
 
 /**
@@ -29,31 +36,153 @@ import javax.swing.JFrame;
  * @author Gopal Peddinti
  * The PCA model X = TP'+E */
 public class PCA {
-        /* Scores Matrix */
-        private Matrix T;
-        /* Loadings Matrix */
-        private Matrix P;
+        /* Scores, one array of length nVars per component */
+        private double[][] T;
+        /* Loadings, one array of length nSamples per component */
+        private double[][] P;
         /* Names */
         private String columnNames[];
         private String rowNames[];
         /* Noise part */
         private Matrix E;
         private double[] eigenVals;
+        /* Iterations needed by every component of the last fit */
+        private int[] iterations;
+        /* Number of components extracted by the last fit */
+        private int nComponents;
+        /* Sum of squares of the data before the first component */
+        private double totalVariance;
+        /* Stop once this fraction of the total variance is explained */
+        private double varianceTarget = 1.0;
+        /* Change of the loading vector, relative to the norm of the data, at
+         * which NIPALS stops */
         private final double threshold = Math.pow(10, -10);
+        /* Relative threshold for single-precision accumulation */
+        private static final double FLOAT_THRESHOLD = 1e-5;
+        /* Seed of the random projection, fixed so that fits are reproducible */
+        static final long RANDOM_SEED = 20100101L;
+        private static final int DEFAULT_OVERSAMPLING = 10;
+        private static final int DEFAULT_POWER_ITERATIONS = 2;
+        /* Measured cost of Jama's symmetric eig() in multiply-adds per n^3 */
+        private static final double EIGEN_COST = 6;
+        /* Rough number of NIPALS iterations needed per component */
+        private static final int ITERATIONS_PER_COMPONENT = 50;
+        /* Iterations after which a NIPALS component is stored unconverged */
+        static final int MAX_NIPALS_ITERATIONS = 10000;
+        /* Extra vectors iterated with the block of the subspace iteration */
+        private static final int SUBSPACE_GUARD = 5;
+        /* Relative eigenvector residual at which subspace iteration stops */
+        private static final double SUBSPACE_TOLERANCE = 1e-10;
+        private static final int MAX_SUBSPACE_ITERATIONS = 10000;
+        /* Algorithm used by the last fit */
+        private PCAStrategy strategy;
+        /* Column preprocessing applied by the fit methods */
+        private Scaling scaling = Scaling.NONE;
+        private Standardizer standardizer;
+        /* Data fitted with Scaling.NONE is already centered, set by center() */
+        private boolean centered;
+        /* Projection of new samples, built on first use after a fit */
+        private ScoreProjector projector;
+        /* Buffers reused by every nipals call */
+        private NipalsWorkspace workspace;
+        /* Keep a column-major copy of the data for the X' products */
+        private boolean columnMirror;
+        /* Loadings of a previous model that start the iterations, or null */
+        private double[][] warmStart;
+        private final List<PCAListener> listeners = new CopyOnWriteArrayList<PCAListener>();
+        /* Views of the last fit, created on first use */
+        private PCAResult result;
+        /* Measurements of the fit in progress */
+        private long fitStart;
+        private long allocatedAtStart;
+        private long standardizationTime;
+        private long deflationTime;
+        private double[] residuals;
+        private boolean converged;
+        private PCAFitStatistics fitStatistics;
+        /* Squared norm of every standardized row, null when not known */
+        private double[] rowSumOfSquares;
+        /* Hotelling's T^2 and Q per sample, updated with every component */
+        private double[] hotellingT2;
+        private double[] residualQ;
 
         public PCA(int nSamples, int nVars) {
-                T = new Matrix(nVars, Math.min(nSamples, nVars));
-                P = new Matrix(nSamples, Math.min(nSamples, nVars));
-                E = new Matrix(nSamples, nVars);
-                eigenVals = new double[Math.min(nSamples, nVars)];
+                this(nSamples, nVars, Math.min(nSamples, nVars));
+        }
+
+        /**
+         * Truncated PCA: at most maxComponents components are computed and
+         * the scores, loadings and eigenvalues are only allocated for them.
+         */
+        public PCA(int nSamples, int nVars, int maxComponents) {
+                int k = Math.min(maxComponents, Math.min(nSamples, nVars));
+                T = new double[k][];
+                P = new double[k][];
+                eigenVals = new double[k];
+                iterations = new int[k];
+                residuals = new double[k];
+        }
+
+        /**
+         * Stops the extraction as soon as the components found so far explain
+         * at least the given fraction (0 - 1] of the total variance.
+         */
+        public void setExplainedVarianceTarget(double varianceTarget) {
+                if (varianceTarget <= 0 || varianceTarget > 1) {
+                        throw new IllegalArgumentException("Explained variance target must be in (0, 1]: " + varianceTarget);
+                }
+                this.varianceTarget = varianceTarget;
+        }
+
+        /**
+         * @return Number of components computed by the last fit
+         */
+        public int getComponentCount() {
+                return nComponents;
+        }
+
+        /**
+         * @return Number of iterations each computed component needed, 0 for
+         * the strategies that decompose the data directly
+         */
+        public int[] getIterations() {
+                return Arrays.copyOf(iterations, nComponents);
+        }
+
+        public void addListener(PCAListener listener) {
+                listeners.add(listener);
+        }
+
+        public void removeListener(PCAListener listener) {
+                listeners.remove(listener);
+        }
+
+        /**
+         * @return Measurements of the last completed fit, null before the
+         * first one
+         */
+        public PCAFitStatistics getFitStatistics() {
+                return fitStatistics;
+        }
+
+        /**
+         * @return Fraction of the total variance explained by each computed
+         * component
+         */
+        public double[] getExplainedVariance() {
+                double[] explained = new double[nComponents];
+                for (int i = 0; i < nComponents; i++) {
+                        explained[i] = eigenVals[i] / totalVariance;
+                }
+                return explained;
         }
 
         private double mean(double[] V) {
-                double mean = 0;
+                double sum = 0;
                 for (int i = 0; i < V.length; i++) {
-                        mean = (mean + V[i]) / 2;
+                        sum += V[i];
                 }
-                return mean;
+                return sum / V.length;
         }
 
         private double sd(double[] V) {
@@ -65,44 +194,175 @@ public class PCA {
                 return Math.sqrt(sd / (V.length - 1));
         }
 
-        // TODO: write a Matrix2 class extending Jama.Matrix
-        // in which center and scale would be methods.
+        /**
+         * @return Copy of X with every column (variable) centered. The
+         * following fits with Scaling.NONE are taken to be on centered data,
+         * as by setCentered(true), so that they report Hotelling's T^2.
+         */
         public Matrix center(Matrix X) {
-                Matrix mcX = X.copy();
+                centered = true;
+                Standardizer standardizer = new Standardizer(Scaling.MEAN_CENTER);
+                double[][] x = X.getArray();
+                standardizer.fit(x, null);
+                Matrix mcX = new Matrix(X.getRowDimension(), X.getColumnDimension());
+                standardizer.apply(x, mcX.getArray(), null);
+                return mcX;
+        }
 
-                for (int j = 0; j < X.getRowDimension(); j++) {
-                        double[] rowj = X.getMatrix(j, j, 0, X.getColumnDimension() - 1).
-                                getRowPackedCopy();
-                        double mean = mean(rowj);
-                        for (int i = 0; i < X.getColumnDimension(); i++) {
-                                mcX.set(j, i, X.get(j, i) - mean);
+        /**
+         * @return Copy of X with every column (variable) divided by its
+         * standard deviation
+         */
+        public Matrix scale(Matrix X) {
+                Standardizer standardizer = new Standardizer(Scaling.UNIT_VARIANCE);
+                double[][] x = X.getArray();
+                standardizer.fit(x, null);
+                double[] sd = standardizer.getStandardDeviation();
+                Matrix mcX = new Matrix(X.getRowDimension(), X.getColumnDimension());
+                double[][] out = mcX.getArray();
+                for (int i = 0; i < x.length; i++) {
+                        for (int j = 0; j < sd.length; j++) {
+                                out[i][j] = x[i][j] / sd[j];
                         }
                 }
                 return mcX;
         }
 
-        public Matrix scale(Matrix X) {
-                Matrix mcX = X.copy();
+        /**
+         * States whether the data given to the fits with Scaling.NONE is
+         * already centered, for example by center(). T^2 measures the
+         * distance from the mean, so it is only computed for such fits and
+         * for fits with a scaling, which always center.
+         */
+        public void setCentered(boolean centered) {
+                this.centered = centered;
+        }
+
+        public boolean isCentered() {
+                return centered;
+        }
+
+        /**
+         * Sets the column preprocessing applied by the fit methods. The
+         * statistics are computed in one pass over X and the standardization
+         * is fused with the copy of the data that the fit works on, so X
+         * itself is not modified.
+         */
+        public void setScaling(Scaling scaling) {
+                this.scaling = scaling;
+        }
+
+        /**
+         * Starts the iterative fits (nipals and subspace) from the loadings
+         * of a previous model instead of the highest-variance start vector.
+         * A refit after adding or removing a few samples then converges in a
+         * few iterations. Components beyond those of the previous model use
+         * the usual start. The loadings are copied, so previous can be refit.
+         * @param previous Model fitted on the same variables, or null to
+         * turn the warm start off
+         */
+        public void setWarmStart(PCA previous) {
+                if (previous == null) {
+                        warmStart = null;
+                        return;
+                }
+                warmStart = new double[previous.nComponents][];
+                for (int c = 0; c < warmStart.length; c++) {
+                        warmStart[c] = previous.getLoading(c);
+                }
+        }
+
+        /**
+         * @return Warm start loading of component c, or null when it has none
+         */
+        private double[] warmStart(int c, int cols) {
+                if (warmStart == null || c >= warmStart.length) {
+                        return null;
+                }
+                if (warmStart[c].length != cols) {
+                        throw new IllegalArgumentException("Warm start model has " + warmStart[c].length
+                                + " variables, the data has " + cols);
+                }
+                return warmStart[c];
+        }
+
+        /**
+         * Makes the dense fits keep a column-major copy of the data, so that
+         * the X' products of every iteration read contiguous columns. This
+         * doubles the memory of the fit and helps mostly for wide matrices
+         * on many threads; by default the products run directly on the
+         * row-major data.
+         */
+        public void setColumnMirror(boolean columnMirror) {
+                this.columnMirror = columnMirror;
+        }
+
+        public boolean isColumnMirror() {
+                return columnMirror;
+        }
+
+        public Scaling getScaling() {
+                return scaling;
+        }
+
+        /**
+         * @return Preprocessing fitted by the last fit, or null when no
+         * scaling was applied
+         */
+        public Standardizer getStandardizer() {
+                return standardizer;
+        }
+
+        /**
+         * Returns the data the model is fitted on. With a scaling the column
+         * statistics are computed and the standardized values are written to
+         * a new array in the same pass that copies X. Without scaling X is
+         * copied only when the algorithm modifies it, into the residual
+         * buffer of the workspace.
+         */
+        private double[][] prepare(Matrix X, ForkJoinPool pool, boolean copy) {
+                long start = System.nanoTime();
+                try {
+                        return prepareData(X, pool, copy);
+                } finally {
+                        standardizationTime += System.nanoTime() - start;
+                }
+        }
 
-                for (int j = 0; j < X.getRowDimension(); j++) {
-                        double[] rowj = X.getMatrix(j, j, 0, X.getColumnDimension() - 1).
-                                getRowPackedCopy();
-                        double sd = sd(rowj);
-                        for (int i = 0; i < X.getColumnDimension(); i++) {
-                                mcX.set(j, i, 1.0 * X.get(j, i) / sd);
+        private double[][] prepareData(Matrix X, ForkJoinPool pool, boolean copy) {
+                double[][] x = X.getArray();
+                standardizer = null;
+                if (scaling != Scaling.NONE) {
+                        standardizer = new Standardizer(scaling);
+                        standardizer.fit(x, pool);
+                } else if (!copy) {
+                        return x;
+                }
+                double[][] out;
+                if (copy) {
+                        out = workspace.residual(x.length, x[0].length);
+                } else {
+                        out = new double[x.length][];
+                        for (int i = 0; i < x.length; i++) {
+                                out[i] = new double[x[i].length];
                         }
                 }
-                return mcX;
+                if (standardizer != null) {
+                        standardizer.apply(x, out, pool);
+                } else {
+                        for (int i = 0; i < x.length; i++) {
+                                System.arraycopy(x[i], 0, out[i], 0, x[i].length);
+                        }
+                }
+                return out;
         }
 
-	private int indexOfMaximumVarianceVariable(Matrix X) {
+	private int indexOfMaximumVarianceVariable(double[][] X) {
 		int maxInd = 0;
 		double prev_sd = 0;
 
-                for (int j = 0; j < X.getRowDimension(); j++) {
-                        double[] rowj = X.getMatrix(j, j, 0, X.getColumnDimension() - 1).
-                                getRowPackedCopy();
-			double sd = sd(rowj);
+                for (int j = 0; j < X.length; j++) {
+			double sd = sd(X[j]);
 			if(j == 0) {
 				maxInd = j;
 			} else if(sd > prev_sd) {
@@ -113,57 +373,787 @@ public class PCA {
 		return maxInd;
 	}
 
+        /**
+         * Fits the model with the strategy chosen by selectStrategy for the
+         * shape of X and the number of requested components.
+         * @param X Matrix whose principal components are to be computed
+         * The columns are variables and the rows are observations
+         */
+        public void fit(Matrix X, String[] columnNames, String[] rowNames) {
+                fit(X, columnNames, rowNames, 1);
+        }
+
+        /**
+         * Fits the model with the strategy chosen by selectStrategy, using
+         * the given number of threads.
+         */
+        public void fit(Matrix X, String[] columnNames, String[] rowNames, int parallelism) {
+                fit(X, columnNames, rowNames,
+                        selectStrategy(X.getRowDimension(), X.getColumnDimension()), parallelism);
+        }
+
+        /**
+         * Fits the model with the given strategy.
+         */
+        public void fit(Matrix X, String[] columnNames, String[] rowNames,
+                PCAStrategy strategy, int parallelism) {
+                switch (strategy) {
+                        case GRAM:
+                                gram(X, columnNames, rowNames, parallelism);
+                                break;
+                        case COVARIANCE:
+                                covariance(X, columnNames, rowNames, parallelism);
+                                break;
+                        case RANDOMIZED:
+                                randomizedSVD(X, columnNames, rowNames, DEFAULT_OVERSAMPLING,
+                                        DEFAULT_POWER_ITERATIONS, parallelism);
+                                break;
+                        case SUBSPACE:
+                                subspace(X, columnNames, rowNames, parallelism);
+                                break;
+                        case TSQR:
+                                throw new IllegalArgumentException("TSQR fits read their data through a PCACoordinator");
+                        default:
+                                nipals(X, columnNames, rowNames, parallelism);
+                }
+        }
+
+        /**
+         * Chooses how a rows x cols matrix is decomposed, from the estimated
+         * number of multiply-adds. With s the smaller and l the larger
+         * dimension, the direct path forms the s x s Gram (rows <= cols) or
+         * covariance (rows > cols) matrix in s^2 l / 2 and decomposes it in
+         * about EIGEN_COST s^3, while NIPALS needs two products of s l per
+         * iteration, with ITERATIONS_PER_COMPONENT iterations for each of the
+         * k requested components. The cheaper one is used, so the direct path
+         * wins for wide data once k is large enough; for 2000 x 40000 that
+         * is from about 16 components.
+         */
+        public PCAStrategy selectStrategy(int rows, int cols) {
+                double smaller = Math.min(rows, cols);
+                double larger = Math.max(rows, cols);
+                double direct = smaller * smaller * larger / 2 + EIGEN_COST * smaller * smaller * smaller;
+                double nipals = 2.0 * ITERATIONS_PER_COMPONENT * eigenVals.length * smaller * larger;
+                if (direct <= nipals) {
+                        return rows <= cols ? PCAStrategy.GRAM : PCAStrategy.COVARIANCE;
+                }
+                return PCAStrategy.NIPALS;
+        }
+
+        /**
+         * @return Strategy used by the last fit
+         */
+        public PCAStrategy getStrategy() {
+                return strategy;
+        }
+
         /**
          * Nipals algorithm for computing principal components
          * @param X Matrix whose principal components are to be computed
          * The columns are variables and the rows are observations
          */
         public void nipals(Matrix X, String[] columnNames, String[] rowNames) {
-                E = X.copy();
+                nipals(X, columnNames, rowNames, 1);
+        }
+
+        /**
+         * Nipals algorithm for computing principal components
+         * @param X Matrix whose principal components are to be computed
+         * The columns are variables and the rows are observations
+         * @param parallelism Number of threads used for the matrix-vector
+         * products and the deflation. With 1 the serial path is used.
+         */
+        public void nipals(Matrix X, String[] columnNames, String[] rowNames, int parallelism) {
                 this.columnNames = columnNames;
                 this.rowNames = rowNames;
-                for (int i = 1; i <= Math.min(E.getRowDimension(),
-                        E.getColumnDimension()); i++) { // a maximum of three components are calculated
-			int maxVarInd = indexOfMaximumVarianceVariable(E);
-			Matrix t = E.getMatrix(maxVarInd, maxVarInd, 0, E.getColumnDimension() - 1).transpose();
-			//Matrix t = E.getMatrix(0, E.getRowDimension() - 1, maxVarInd, maxVarInd);
-			Matrix p = null;
-			Matrix t_old = null;
-			do {
-				p = E.times(t); //.times(1.0 / (t.transpose().times(t).get(0, 0)));
-				p = p.times(1.0 / p.normF());
-
-				t_old = t.copy();
-				t = E.transpose().times(p); //.times(1.0 / (p.transpose().times(p).get(0, 0)));
-                        } while((t_old.minus(t)).norm2() > threshold);
-
-			eigenVals[i - 1] = t.transpose().times(t).get(0, 0);
-                        E = E.minus(p.times(t.transpose()));
-                        T.setMatrix(0, E.getColumnDimension() - 1, i - 1, i - 1, t);
-                        P.setMatrix(0, E.getRowDimension() - 1, i - 1, i - 1, p);
-		}
+                beginFit(PCAStrategy.NIPALS);
+                ForkJoinPool pool = createPool(parallelism);
+                try {
+                        int rows = X.getRowDimension();
+                        int cols = X.getColumnDimension();
+                        if (workspace == null) {
+                                workspace = new NipalsWorkspace(rows, cols);
+                        } else {
+                                workspace.ensureCapacity(rows, cols);
+                        }
+                        E = new Matrix(prepare(X, pool, true));
+                        nipals(pool);
+                } finally {
+                        shutdown(pool);
+                }
+                endFit(X.getRowDimension(), X.getColumnDimension());
+        }
+
+        /**
+         * NIPALS iteration on the backing array of E, which is the residual
+         * buffer of the workspace. The score and loading vectors also live in
+         * the workspace and are reused for every iteration and component,
+         * and E is deflated in place with a rank-1 update, so nothing is
+         * allocated inside the loop. With a pool the products and the
+         * deflation are split into row/column blocks.
+         */
+        private void nipals(ForkJoinPool pool) {
+                int rows = E.getRowDimension();
+                int cols = E.getColumnDimension();
+                double[][] e = E.getArray();
+                NipalsWorkspace w = workspace;
+                // the mirror is deflated together with E
+                double[][] et = columnMirror ? MatrixKernels.transpose(e) : null;
+                totalVariance = sumOfSquares(e);
+                double limit = threshold * threshold * totalVariance;
+                nComponents = 0;
+                int maxComponents = Math.min(eigenVals.length, Math.min(rows, cols));
+                for (int i = 0; i < maxComponents; i++) {
+                        double[] start = warmStart(i, cols);
+                        if (start == null) {
+                                start = e[indexOfMaximumVarianceVariable(e)];
+                        }
+                        System.arraycopy(start, 0, w.t, 0, cols);
+                        int count = 0;
+                        double change;
+                        do {
+                                count++;
+                                MatrixKernels.multiply(e, w.t, w.p, pool);
+                                double norm = Math.sqrt(dot(w.p, w.p));
+                                for (int j = 0; j < rows; j++) {
+                                        w.p[j] /= norm;
+                                }
+
+                                w.swapLoadings();
+                                if (et != null) {
+                                        MatrixKernels.multiply(et, w.p, w.t, pool);
+                                } else {
+                                        MatrixKernels.transposeMultiply(e, w.p, w.t, pool);
+                                }
+                                change = squaredDistance(w.tOld, w.t);
+                        } while (change > limit && count < MAX_NIPALS_ITERATIONS);
+                        if (change > limit) {
+                                converged = false;
+                        }
+
+                        long deflationStart = System.nanoTime();
+                        MatrixKernels.subtractOuterProduct(e, w.p, w.t, pool);
+                        if (et != null) {
+                                MatrixKernels.subtractOuterProduct(et, w.t, w.p, pool);
+                        }
+                        deflationTime += System.nanoTime() - deflationStart;
+                        if (!storeComponent(i, w.t, w.p, count, Math.sqrt(change))) {
+                                break;
+                        }
+                }
+        }
+
+        /**
+         * Computes the components from the eigendecomposition of the n x n
+         * Gram matrix X*X'. The eigenvectors are the scores and the loadings
+         * are obtained by back-projecting them with X'. This is the cheap
+         * path when there are far fewer samples than variables.
+         */
+        public void gram(Matrix X, String[] columnNames, String[] rowNames, int parallelism) {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                beginFit(PCAStrategy.GRAM);
+                ForkJoinPool pool = createPool(parallelism);
+                try {
+                        double[][] x = prepare(X, pool, false);
+                        int rows = x.length;
+                        int cols = x[0].length;
+                        int k = Math.min(eigenVals.length, Math.min(rows, cols));
+                        double[][] G = new double[rows][rows];
+                        MatrixKernels.multiplyTranspose(x, G, pool);
+                        EigenvalueDecomposition eig = new Matrix(G).eig();
+                        double[] values = eig.getRealEigenvalues();
+                        double[][] vectors = eig.getV().getArray();
+
+                        // eigenvalues come in ascending order
+                        double[][] scores = new double[rows][k];
+                        for (int j = 0; j < rows; j++) {
+                                for (int c = 0; c < k; c++) {
+                                        scores[j][c] = vectors[j][rows - 1 - c];
+                                }
+                        }
+                        double[][] loadings = new double[cols][k];
+                        MatrixKernels.transposeMultiply(x, scores, loadings, pool);
+                        storeComponents(x, values, rows, scores, loadings, k, true);
+                } finally {
+                        shutdown(pool);
+                }
+                endFit(X.getRowDimension(), X.getColumnDimension());
+        }
+
+        /**
+         * Computes the components from the eigendecomposition of the p x p
+         * matrix X'*X. The eigenvectors scaled by the square root of the
+         * eigenvalues are the loadings, and the scores are obtained by
+         * projecting X on the eigenvectors. This is the cheap path when there
+         * are far fewer variables than samples.
+         */
+        public void covariance(Matrix X, String[] columnNames, String[] rowNames, int parallelism) {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                beginFit(PCAStrategy.COVARIANCE);
+                ForkJoinPool pool = createPool(parallelism);
+                try {
+                        double[][] x = prepare(X, pool, false);
+                        int rows = x.length;
+                        int cols = x[0].length;
+                        int k = Math.min(eigenVals.length, Math.min(rows, cols));
+                        double[][] C = new double[cols][cols];
+                        MatrixKernels.transposeMultiply(x, x, C, pool);
+                        EigenvalueDecomposition eig = new Matrix(C).eig();
+                        double[] values = eig.getRealEigenvalues();
+                        double[][] vectors = eig.getV().getArray();
+
+                        // eigenvalues come in ascending order
+                        double[][] loadings = new double[cols][k];
+                        for (int j = 0; j < cols; j++) {
+                                for (int c = 0; c < k; c++) {
+                                        loadings[j][c] = vectors[j][cols - 1 - c];
+                                }
+                        }
+                        double[][] scores = new double[rows][k];
+                        MatrixKernels.multiply(x, loadings, scores, pool);
+                        storeComponents(x, values, cols, scores, loadings, k, false);
+                } finally {
+                        shutdown(pool);
+                }
+                endFit(X.getRowDimension(), X.getColumnDimension());
+        }
+
+        /**
+         * Stores the k leading components of an eigendecomposition. Scores
+         * and loadings are rescaled so that every score vector has unit
+         * length and every loading vector has squared length equal to its
+         * eigenvalue, as in nipals.
+         * @param unitScores true when the scores are the unit eigenvectors
+         * and the loadings are already scaled, false when the loadings are
+         * the unit eigenvectors and the scores are the projections of X
+         */
+        private void storeComponents(double[][] x, double[] values, int n,
+                double[][] scores, double[][] loadings, int k, boolean unitScores) {
+                totalVariance = sumOfSquares(x);
+                nComponents = 0;
+                double[] t = new double[loadings.length];
+                double[] p = new double[scores.length];
+                for (int c = 0; c < k; c++) {
+                        double value = values[n - 1 - c];
+                        if (value <= 0) {
+                                break;
+                        }
+                        double sigma = Math.sqrt(value);
+                        double tScale = unitScores ? 1.0 : sigma;
+                        double pScale = unitScores ? 1.0 : 1.0 / sigma;
+                        for (int j = 0; j < t.length; j++) {
+                                t[j] = tScale * loadings[j][c];
+                        }
+                        for (int j = 0; j < p.length; j++) {
+                                p[j] = pScale * scores[j][c];
+                        }
+                        if (!storeComponent(c, t, p)) {
+                                break;
+                        }
+                }
+        }
+
+        /**
+         * Randomized SVD alternative to nipals. The leading components are
+         * found from a random projection of X refined with power iterations,
+         * which needs only a few passes over the data.
+         * @param X Matrix whose principal components are to be computed
+         * The columns are variables and the rows are observations
+         * @param oversampling Number of extra random vectors used to sample
+         * the range of X
+         * @param powerIterations Number of power iterations, more iterations
+         * give better accuracy when the singular values decay slowly
+         */
+        public void randomizedSVD(Matrix X, String[] columnNames, String[] rowNames,
+                int oversampling, int powerIterations) {
+                randomizedSVD(X, columnNames, rowNames, oversampling, powerIterations, 1);
+        }
+
+        /**
+         * Randomized SVD alternative to nipals with the block products split
+         * over the given number of threads.
+         */
+        public void randomizedSVD(Matrix X, String[] columnNames, String[] rowNames,
+                int oversampling, int powerIterations, int parallelism) {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                beginFit(PCAStrategy.RANDOMIZED);
+                RandomizedSVD svd = new RandomizedSVD(oversampling, powerIterations, RANDOM_SEED);
+                double[][] x;
+                ForkJoinPool pool = createPool(parallelism);
+                try {
+                        x = prepare(X, pool, false);
+                        svd.compute(new DenseDataMatrix(x, pool, columnMirror), eigenVals.length);
+                } finally {
+                        shutdown(pool);
+                }
+                totalVariance = sumOfSquares(x);
+                storeComponents(svd);
+                endFit(X.getRowDimension(), X.getColumnDimension());
+        }
+
+        /**
+         * Block power iteration alternative to nipals. All requested
+         * components are iterated together and re-orthogonalized every step,
+         * which converges in far fewer passes than nipals when eigenvalues
+         * are close. getIterations() reports the passes each component needed.
+         * @param X Matrix whose principal components are to be computed
+         * The columns are variables and the rows are observations
+         * @param parallelism Number of threads used for the block products
+         */
+        public void subspace(Matrix X, String[] columnNames, String[] rowNames, int parallelism) {
+                beginFit(PCAStrategy.SUBSPACE);
+                ForkJoinPool pool = createPool(parallelism);
+                try {
+                        double[][] x = prepare(X, pool, false);
+                        subspace(new DenseDataMatrix(x, pool, columnMirror), columnNames, rowNames, sumOfSquares(x));
+                } finally {
+                        shutdown(pool);
+                }
+                endFit(X.getRowDimension(), X.getColumnDimension());
+        }
+
+        /**
+         * Block power iteration on a DataMatrix, with the scaling set with
+         * setScaling applied implicitly.
+         */
+        public void subspace(DataMatrix X, String[] columnNames, String[] rowNames) {
+                beginFit(PCAStrategy.SUBSPACE);
+                Standardizer statistics = fitStatistics(X);
+                double total = 0;
+                for (double ss : statistics.getColumnSumOfSquares()) {
+                        total += ss;
+                }
+                subspace(standardized(X, statistics), columnNames, rowNames, total);
+                endFit(X.getRowCount(), X.getColumnCount());
+        }
+
+        private void subspace(DataMatrix x, String[] columnNames, String[] rowNames, double total) {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                totalVariance = total;
+                SubspaceIteration engine = new SubspaceIteration(SUBSPACE_GUARD, SUBSPACE_TOLERANCE,
+                        MAX_SUBSPACE_ITERATIONS, RANDOM_SEED);
+                if (warmStart != null) {
+                        warmStart(0, x.getColumnCount());
+                        engine.setStart(warmStart);
+                }
+                engine.compute(x, eigenVals.length);
+                converged = engine.converged;
+                nComponents = 0;
+                for (int i = 0; i < engine.t.length; i++) {
+                        if (!storeComponent(i, engine.t[i], engine.p[i], engine.iterations[i], engine.residuals[i])) {
+                                break;
+                        }
+                }
+        }
+
+        /**
+         * Partitioned fit: the row blocks of the coordinator's file are
+         * standardized and reduced to R factors by separate worker JVMs and
+         * merged by tall-skinny QR, see PCACoordinator. The scaling set with
+         * setScaling uses the statistics of all rows.
+         */
+        public void tsqr(PCACoordinator coordinator, String[] columnNames, String[] rowNames) throws IOException {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                beginFit(PCAStrategy.TSQR);
+                PCACoordinator.Result merged = coordinator.run(scaling, eigenVals.length);
+                standardizer = scaling == Scaling.NONE ? null : merged.statistics;
+                rowSumOfSquares = merged.rowSumOfSquares;
+                totalVariance = 0;
+                for (double ss : merged.statistics.getColumnSumOfSquares()) {
+                        totalVariance += ss;
+                }
+                nComponents = 0;
+                for (int i = 0; i < merged.t.length; i++) {
+                        if (!storeComponent(i, merged.t[i], merged.p[i])) {
+                                break;
+                        }
+                }
+                endFit(coordinator.getRowCount(), coordinator.getColumnCount());
+        }
+
+        /**
+         * Out-of-core nipals: X is only read through its products, for example
+         * from a MappedDataMatrix, and the residual is never formed. The
+         * scaling set with setScaling is computed in one streaming pass and
+         * applied implicitly. Only the score and loading vectors are kept in
+         * memory.
+         * @param X Data whose principal components are to be computed
+         * The columns are variables and the rows are observations
+         */
+        public void nipals(DataMatrix X, String[] columnNames, String[] rowNames) {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                beginFit(PCAStrategy.NIPALS);
+                Standardizer statistics = fitStatistics(X);
+                DataMatrix x = standardized(X, statistics);
+                double[] columnSumOfSquares = statistics.getColumnSumOfSquares();
+                int rows = x.getRowCount();
+                int cols = x.getColumnCount();
+                if (workspace == null) {
+                        workspace = new NipalsWorkspace(rows, cols);
+                } else {
+                        workspace.ensureCapacity(rows, cols);
+                }
+                totalVariance = 0;
+                for (int j = 0; j < cols; j++) {
+                        totalVariance += columnSumOfSquares[j];
+                }
+                nComponents = 0;
+                int maxComponents = Math.min(eigenVals.length, Math.min(rows, cols));
+                ImplicitNipals engine = new ImplicitNipals(x, columnSumOfSquares, maxComponents,
+                        convergenceThreshold(X), MAX_NIPALS_ITERATIONS);
+                for (int i = 0; i < maxComponents; i++) {
+                        int count = engine.next(workspace, warmStart(i, cols));
+                        if (!engine.hasConverged()) {
+                                converged = false;
+                        }
+                        if (!storeComponent(i, workspace.t, workspace.p, count, engine.getResidual())) {
+                                break;
+                        }
+                }
+                endFit(rows, cols);
+        }
+
+        /**
+         * @return Convergence threshold of the loading vectors, relative to
+         * the norm of the data so that it does not depend on its units. Float
+         * sums are only accurate to about 1e-7 of the data norm, so
+         * FloatDataMatrix without double accumulation uses FLOAT_THRESHOLD.
+         */
+        private double convergenceThreshold(DataMatrix X) {
+                double norm = Math.sqrt(totalVariance);
+                if (X instanceof FloatDataMatrix && !((FloatDataMatrix) X).hasDoubleAccumulation()) {
+                        return FLOAT_THRESHOLD * norm;
+                }
+                return threshold * norm;
+        }
+
+        /**
+         * Out-of-core randomized SVD: X is only read through its block
+         * products, each power iteration being two passes over the data.
+         */
+        public void randomizedSVD(DataMatrix X, String[] columnNames, String[] rowNames,
+                int oversampling, int powerIterations) {
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                E = null;
+                beginFit(PCAStrategy.RANDOMIZED);
+                Standardizer statistics = fitStatistics(X);
+                RandomizedSVD svd = new RandomizedSVD(oversampling, powerIterations, RANDOM_SEED);
+                svd.compute(standardized(X, statistics), eigenVals.length);
+                totalVariance = 0;
+                for (double ss : statistics.getColumnSumOfSquares()) {
+                        totalVariance += ss;
+                }
+                storeComponents(svd);
+                endFit(X.getRowCount(), X.getColumnCount());
+        }
+
+        /**
+         * Computes the column statistics of X in one streaming pass. They are
+         * needed also without scaling, for the column sums of squares.
+         */
+        private Standardizer fitStatistics(DataMatrix X) {
+                long start = System.nanoTime();
+                Standardizer statistics = new Standardizer(scaling);
+                statistics.fit(X, null);
+                standardizer = scaling == Scaling.NONE ? null : statistics;
+                standardizationTime += System.nanoTime() - start;
+                return statistics;
+        }
+
+        /**
+         * @return X itself without scaling, otherwise its implicitly
+         * standardized view
+         */
+        private DataMatrix standardized(DataMatrix X, Standardizer statistics) {
+                if (scaling == Scaling.NONE) {
+                        return X;
+                }
+                return new StandardizedDataMatrix(X, statistics.getMean(), statistics.getScale());
+        }
+
+        private void storeComponents(RandomizedSVD svd) {
+                nComponents = 0;
+                double[] t = new double[svd.v[0].length];
+                for (int i = 0; i < svd.singularValues.length; i++) {
+                        double sigma = svd.singularValues[i];
+                        for (int j = 0; j < t.length; j++) {
+                                t[j] = sigma * svd.v[i][j];
+                        }
+                        if (!storeComponent(i, t, svd.u[i])) {
+                                break;
+                        }
+                }
+        }
+
+        /**
+         * Stores component i with loading vector t and unit score vector p.
+         * @return false when the explained variance target has been reached
+         * and no more components should be computed
+         */
+        private boolean storeComponent(int i, double[] t, double[] p) {
+                return storeComponent(i, t, p, 0, 0);
+        }
+
+        /**
+         * Stores component i found after the given number of iterations,
+         * with the convergence measure reached in the last one.
+         */
+        private boolean storeComponent(int i, double[] t, double[] p, int iterationCount, double residual) {
+                projector = null;
+                result = null;
+                iterations[i] = iterationCount;
+                residuals[i] = residual;
+                eigenVals[i] = dot(t, t);
+                T[i] = t.clone();
+                P[i] = p.clone();
+                nComponents = i + 1;
+                updateDiagnostics(i, eigenVals[i], p);
+                for (PCAListener listener : listeners) {
+                        listener.componentExtracted(this, i, iterationCount, residual);
+                }
+                double explained = 0;
+                for (int j = 0; j <= i; j++) {
+                        explained += eigenVals[j];
+                }
+                return !(varianceTarget < 1.0 && explained >= varianceTarget * totalVariance);
+        }
+
+        /**
+         * Adds component i with eigenvalue lambda and unit scores p to T^2,
+         * which is (n - 1) times the sum of p_i^2, and removes its part
+         * lambda p_i^2 from the remaining sum of squares Q of every row.
+         */
+        private void updateDiagnostics(int i, double lambda, double[] p) {
+                if (i == 0) {
+                        // T^2 is a distance from the mean, unknown without centering
+                        hotellingT2 = standardizer != null || centered ? new double[p.length] : null;
+                        residualQ = rowSumOfSquares != null ? rowSumOfSquares.clone() : null;
+                }
+                double n = p.length - 1;
+                for (int j = 0; j < p.length; j++) {
+                        double p2 = p[j] * p[j];
+                        if (hotellingT2 != null) {
+                                hotellingT2[j] += n * p2;
+                        }
+                        if (residualQ != null) {
+                                residualQ[j] -= lambda * p2;
+                        }
+                }
+        }
+
+        /**
+         * Resets the measurements at the start of a fit with the given
+         * strategy.
+         */
+        private void beginFit(PCAStrategy strategy) {
+                this.strategy = strategy;
+                // new storage, so that the result of the previous fit is not modified
+                result = null;
+                eigenVals = new double[eigenVals.length];
+                T = new double[T.length][];
+                P = new double[P.length][];
+                rowSumOfSquares = null;
+                hotellingT2 = null;
+                residualQ = null;
+                fitStart = System.nanoTime();
+                allocatedAtStart = allocatedBytes();
+                standardizationTime = 0;
+                deflationTime = 0;
+                converged = true;
+                for (PCAListener listener : listeners) {
+                        listener.fitStarted(this, strategy);
+                }
+        }
+
+        private void endFit(int rows, int cols) {
+                long allocated = allocatedAtStart < 0 ? -1 : allocatedBytes() - allocatedAtStart;
+                fitStatistics = new PCAFitStatistics(strategy, rows, cols, System.nanoTime() - fitStart,
+                        standardizationTime, deflationTime, Arrays.copyOf(iterations, nComponents),
+                        Arrays.copyOf(residuals, nComponents), converged, allocated);
+                for (PCAListener listener : listeners) {
+                        listener.fitFinished(this, fitStatistics);
+                }
+        }
+
+        /**
+         * @return Bytes allocated so far by the calling thread, -1 when the
+         * JVM does not measure it
+         */
+        private static long allocatedBytes() {
+                java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+                if (bean instanceof com.sun.management.ThreadMXBean) {
+                        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+                        if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+                        }
+                }
+                return -1;
+        }
+
+        /**
+         * @return Pool with the given parallelism, or null for the serial path
+         */
+        private static ForkJoinPool createPool(int parallelism) {
+                return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        }
+
+        private static void shutdown(ForkJoinPool pool) {
+                if (pool != null) {
+                        pool.shutdown();
+                }
+        }
+
+        /**
+         * @return Sum of squares of X; the sums of its rows are kept for Q
+         */
+        private double sumOfSquares(double[][] X) {
+                rowSumOfSquares = new double[X.length];
+                double sum = 0;
+                for (int i = 0; i < X.length; i++) {
+                        rowSumOfSquares[i] = dot(X[i], X[i]);
+                        sum += rowSumOfSquares[i];
+                }
+                return sum;
+        }
+
+        private static double dot(double[] a, double[] b) {
+                return MatrixKernels.dot(a, b);
+        }
+
+        private static double squaredDistance(double[] a, double[] b) {
+                return MatrixKernels.squaredDistance(a, b);
+        }
+
+        /**
+         * Projects new samples on the fitted model, applying the scaling of
+         * the fit. The scores are in the same scale as the scores plot, so
+         * projecting the training samples gives back their fitted scores.
+         * @param X New samples, one row per sample and one column per variable
+         * @return Scores with one row per sample and one column per component
+         */
+        public double[][] transform(double[][] X) {
+                return getProjector().project(X);
+        }
+
+        /**
+         * Projects a block of new samples stored row after row in X, without
+         * allocating per sample.
+         * @param scores Receives nRows * getComponentCount() scores, row
+         * after row
+         */
+        public void transform(double[] X, int nRows, double[] scores) {
+                getProjector().project(X, nRows, scores);
+        }
+
+        /**
+         * Saves the last fit in the binary format read by PCAModel.load.
+         */
+        public void save(File file) throws IOException {
+                PCAModel.write(this, file);
+        }
+
+        /**
+         * @return Copy of loading vector c, one value per variable
+         */
+        double[] getLoading(int c) {
+                return T[c].clone();
+        }
+
+        /**
+         * Makes the nipals methods use the given buffers, so that callers
+         * fitting many models can share one workspace per thread. The
+         * residual of the last fit lives in the workspace, so it is dropped.
+         */
+        void setWorkspace(NipalsWorkspace workspace) {
+                this.workspace = workspace;
+                E = null;
+        }
+
+        private synchronized ScoreProjector getProjector() {
+                if (projector == null) {
+                        projector = new ScoreProjector(getResult(),
+                                standardizer != null ? standardizer.getMean() : null,
+                                standardizer != null ? standardizer.getScale() : null);
+                }
+                return projector;
         }
 
+        /**
+         * @return Copies of the eigenvalues and score vectors. getResult()
+         * gives the same values without copying.
+         */
         public List<PrincipleComponent> getPCs() {
                 List<PrincipleComponent> components = new ArrayList<PrincipleComponent>();
-                for (int i = 0; i < P.getColumnDimension(); i++) {
-                        components.add(new PrincipleComponent(eigenVals[i], P.getMatrix(0, P.getRowDimension() - 1, i, i).getColumnPackedCopy()));
+                for (int i = 0; i < nComponents; i++) {
+                        components.add(new PrincipleComponent(eigenVals[i], P[i].clone()));
                 }
                 return components;
         }
 
+        /**
+         * @return Read-only views of the last fit. The result stays valid
+         * and unchanged when the model is fitted again.
+         */
+        public synchronized PCAResult getResult() {
+                if (result == null) {
+                        result = new PCAResult(eigenVals, T, P, nComponents, totalVariance,
+                                columnNames, rowNames, hotellingT2 != null || residualQ != null
+                                ? diagnostics() : null);
+                }
+                return result;
+        }
+
+        /**
+         * @return T^2 and Q of the components stored so far. The arrays are
+         * copied because later components keep updating them.
+         */
+        private PCADiagnostics diagnostics() {
+                return new PCADiagnostics(hotellingT2 != null ? hotellingT2.clone() : null,
+                        residualQ != null ? residualQ.clone() : null, nComponents);
+        }
+
+        /**
+         * @return Plot of the loadings of the first two components, one
+         * item per variable
+         */
         public PlotPanel loadingsplot(String Xlabel, String Ylabel) {
-                PCADataset dataset = new PCADataset(T, this.rowNames, Xlabel, Ylabel);
+                checkPlottable();
+                PCADataset dataset = getResult().loadingsDataset(0, 1, Xlabel, Ylabel);
                 PlotPanel panel = new PlotPanel(dataset);
                 return panel;
         }
 
+        /**
+         * @return Plot of the scores of the first two components, one item
+         * per sample
+         */
         public PlotPanel scoresplot(String Xlabel, String Ylabel) {
-                PCADataset dataset = new PCADataset(P, this.rowNames, Xlabel, Ylabel);
+                checkPlottable();
+                PCADataset dataset = getResult().scoresDataset(0, 1, Xlabel, Ylabel);
                 PlotPanel panel = new PlotPanel(dataset);
                 return panel;
         }
 
+        private void checkPlottable() {
+                if (getComponentCount() < 2) {
+                        throw new IllegalStateException("The plots need at least two components, the fit has "
+                                + getComponentCount());
+                }
+        }
+
         public void test() {
                 PCA pc = new PCA(3, 3);
                 double[][] arr = {{1, 2, 3}, {4, 5, 6}, {7, 8, 9}};
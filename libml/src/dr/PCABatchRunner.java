@@ -0,0 +1,159 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fits one NIPALS model per dataset, for example per batch or per tissue of
+ * a study, with the jobs running concurrently on the given executor. Every
+ * job gets its own PCA instance, while the NIPALS workspaces are recycled
+ * from a shared pool. The results come back in the order the datasets were
+ * added. The executor is not shut down by the runner.
+ */
+public class PCABatchRunner {
+
+        private final ExecutorService executor;
+        private final WorkspacePool workspaces = new WorkspacePool();
+        private final List<Job> jobs = new ArrayList<Job>();
+        private int maxComponents = Integer.MAX_VALUE;
+        private Scaling scaling = Scaling.NONE;
+
+        public PCABatchRunner(ExecutorService executor) {
+                this.executor = executor;
+        }
+
+        /**
+         * Limits the number of components fitted per dataset.
+         */
+        public void setMaxComponents(int maxComponents) {
+                this.maxComponents = maxComponents;
+        }
+
+        /**
+         * Column preprocessing applied to every dataset.
+         */
+        public void setScaling(Scaling scaling) {
+                this.scaling = scaling;
+        }
+
+        /**
+         * Queues a dataset for the next run.
+         * @return Index of its result in the list returned by run()
+         */
+        public int add(Matrix X, String[] columnNames, String[] rowNames) {
+                jobs.add(new Job(X, columnNames, rowNames));
+                return jobs.size() - 1;
+        }
+
+        /**
+         * Fits all queued datasets and clears the queue. A failing job does
+         * not stop the others; its result holds the error instead of a model.
+         * @return One result per dataset, in the order they were added
+         */
+        public List<Result> run() throws InterruptedException {
+                List<Job> submitted = new ArrayList<Job>(jobs);
+                jobs.clear();
+                List<Future<Result>> futures = executor.invokeAll(submitted);
+                List<Result> results = new ArrayList<Result>(futures.size());
+                for (int i = 0; i < futures.size(); i++) {
+                        try {
+                                results.add(futures.get(i).get());
+                        } catch (ExecutionException e) {
+                                results.add(new Result(null, 0, e.getCause()));
+                        }
+                }
+                return results;
+        }
+
+        private class Job implements Callable<Result> {
+
+                private final Matrix X;
+                private final String[] columnNames;
+                private final String[] rowNames;
+
+                Job(Matrix X, String[] columnNames, String[] rowNames) {
+                        this.X = X;
+                        this.columnNames = columnNames;
+                        this.rowNames = rowNames;
+                }
+
+                public Result call() {
+                        long start = System.nanoTime();
+                        int rows = X.getRowDimension();
+                        int cols = X.getColumnDimension();
+                        NipalsWorkspace workspace = workspaces.acquire(rows, cols);
+                        try {
+                                PCA pca = new PCA(rows, cols, maxComponents);
+                                pca.setScaling(scaling);
+                                pca.setWorkspace(workspace);
+                                pca.nipals(X, columnNames, rowNames);
+                                // the finished model must not keep the shared buffers
+                                pca.setWorkspace(null);
+                                return new Result(pca, System.nanoTime() - start, null);
+                        } catch (RuntimeException e) {
+                                return new Result(null, System.nanoTime() - start, e);
+                        } finally {
+                                workspaces.release(workspace);
+                        }
+                }
+        }
+
+        /**
+         * Outcome of one job.
+         */
+        public static class Result {
+
+                private final PCA model;
+                private final long time;
+                private final Throwable error;
+
+                Result(PCA model, long time, Throwable error) {
+                        this.model = model;
+                        this.time = time;
+                        this.error = error;
+                }
+
+                /**
+                 * @return Fitted model, null when the job failed
+                 */
+                public PCA getModel() {
+                        return model;
+                }
+
+                /**
+                 * @return Wall-clock time of the job in milliseconds
+                 */
+                public double getTime() {
+                        return time / 1e6;
+                }
+
+                /**
+                 * @return Exception thrown by the job, null when it succeeded
+                 */
+                public Throwable getError() {
+                        return error;
+                }
+        }
+}
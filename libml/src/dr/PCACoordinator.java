@@ -0,0 +1,276 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a partitioned PCA of a MappedDataMatrix file with one worker JVM per
+ * block of rows, for data sets whose rows do not fit in one process. The
+ * workers are started on the local machine and talk to the coordinator over
+ * pipes, so only the small per-block summaries are transferred:
+ *
+ * 1. every worker sends the column statistics of its rows, which are merged
+ * into the global means and scales and sent back;
+ * 2. every worker standardizes its rows with them and sends the cols x cols
+ * R factor of their QR decomposition. The stacked factors are reduced by
+ * one more QR (tall-skinny QR), whose R has the same singular values and
+ * right singular vectors as the whole standardized matrix;
+ * 3. the SVD of that R gives the loadings, which are sent to the workers
+ * to compute the scores and squared norms of their rows.
+ *
+ * The coordinator holds O(workers * cols^2) values, so the method is meant
+ * for tall data with up to a few thousand columns. The fit is started with
+ * PCA.tsqr.
+ */
+public class PCACoordinator {
+
+        /* Singular values below this fraction of the largest are treated as zero */
+        private static final double NULL_SPACE = 1e-14;
+        private final File file;
+        private final int rows;
+        private final int cols;
+        private final boolean rowMajor;
+        private final int workers;
+        private final List<String> jvmArguments = new ArrayList<String>();
+
+        /**
+         * @param file Binary file of doubles as read by MappedDataMatrix
+         * @param workers Number of worker processes, each reading
+         * rows / workers rows
+         */
+        public PCACoordinator(File file, int rows, int cols, boolean rowMajor, int workers) {
+                if (workers < 1) {
+                        throw new IllegalArgumentException("Need at least 1 worker");
+                }
+                this.file = file;
+                this.rows = rows;
+                this.cols = cols;
+                this.rowMajor = rowMajor;
+                this.workers = workers;
+        }
+
+        /**
+         * Options passed to every worker JVM, for example -Xmx.
+         */
+        public void setJvmArguments(String... arguments) {
+                jvmArguments.clear();
+                jvmArguments.addAll(Arrays.asList(arguments));
+        }
+
+        public int getRowCount() {
+                return rows;
+        }
+
+        public int getColumnCount() {
+                return cols;
+        }
+
+        /**
+         * Runs the workers and merges their results.
+         * @param k Largest number of components computed
+         */
+        Result run(Scaling scaling, int k) throws IOException {
+                int n = Math.min(workers, rows);
+                Worker[] started = new Worker[n];
+                try {
+                        for (int b = 0; b < n; b++) {
+                                started[b] = new Worker(scaling, (int) ((long) b * rows / n),
+                                        (int) ((long) (b + 1) * rows / n));
+                        }
+
+                        Standardizer statistics = null;
+                        for (Worker worker : started) {
+                                Standardizer block = Standardizer.read(scaling, worker.in);
+                                if (statistics == null) {
+                                        statistics = block;
+                                } else {
+                                        statistics.merge(block);
+                                }
+                        }
+                        for (Worker worker : started) {
+                                statistics.write(worker.out);
+                                worker.out.flush();
+                        }
+
+                        List<double[]> stacked = new ArrayList<double[]>();
+                        for (Worker worker : started) {
+                                int r = worker.in.readInt();
+                                for (int i = 0; i < r; i++) {
+                                        stacked.add(readVector(worker.in, cols));
+                                }
+                        }
+                        double[][] R = stacked.toArray(new double[stacked.size()][]);
+                        if (R.length > cols) {
+                                R = new Matrix(R).qr().getR().getArray();
+                        }
+                        // Jama's SVD needs at least as many rows as columns
+                        SingularValueDecomposition svd;
+                        double[][] vectors;
+                        if (R.length >= cols) {
+                                svd = new Matrix(R).svd();
+                                vectors = svd.getV().getArray();
+                        } else {
+                                svd = new Matrix(R).transpose().svd();
+                                vectors = svd.getU().getArray();
+                        }
+                        double[] sigma = svd.getSingularValues();
+                        k = Math.min(k, sigma.length);
+                        for (int c = 0; c < k; c++) {
+                                if (sigma[c] == 0 || sigma[c] <= NULL_SPACE * sigma[0]) {
+                                        k = c;
+                                        break;
+                                }
+                        }
+
+                        double[][] V = new double[k][cols];
+                        for (int c = 0; c < k; c++) {
+                                for (int j = 0; j < cols; j++) {
+                                        V[c][j] = vectors[j][c];
+                                }
+                        }
+                        for (Worker worker : started) {
+                                worker.out.writeInt(k);
+                                for (int c = 0; c < k; c++) {
+                                        for (int j = 0; j < cols; j++) {
+                                                worker.out.writeDouble(V[c][j]);
+                                        }
+                                }
+                                for (int c = 0; c < k; c++) {
+                                        worker.out.writeDouble(sigma[c]);
+                                }
+                                worker.out.flush();
+                        }
+                        double[][] t = new double[k][cols];
+                        double[][] p = new double[k][rows];
+                        for (int c = 0; c < k; c++) {
+                                for (int j = 0; j < cols; j++) {
+                                        t[c][j] = sigma[c] * V[c][j];
+                                }
+                        }
+                        double[] rowSumOfSquares = new double[rows];
+                        for (Worker worker : started) {
+                                for (int c = 0; c < k; c++) {
+                                        for (int i = worker.from; i < worker.to; i++) {
+                                                p[c][i] = worker.in.readDouble();
+                                        }
+                                }
+                                for (int i = worker.from; i < worker.to; i++) {
+                                        rowSumOfSquares[i] = worker.in.readDouble();
+                                }
+                        }
+                        for (int b = 0; b < n; b++) {
+                                started[b].finish(b);
+                        }
+                        return new Result(statistics, t, p, rowSumOfSquares);
+                } finally {
+                        for (Worker worker : started) {
+                                if (worker != null) {
+                                        worker.process.destroy();
+                                }
+                        }
+                }
+        }
+
+        private static double[] readVector(DataInputStream in, int length) throws IOException {
+                double[] v = new double[length];
+                for (int j = 0; j < length; j++) {
+                        v[j] = in.readDouble();
+                }
+                return v;
+        }
+
+        /**
+         * A worker process reading rows from .. to - 1.
+         */
+        private class Worker {
+
+                final Process process;
+                final DataInputStream in;
+                final DataOutputStream out;
+                final int from, to;
+
+                Worker(Scaling scaling, int from, int to) throws IOException {
+                        this.from = from;
+                        this.to = to;
+                        List<String> command = new ArrayList<String>();
+                        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+                        command.addAll(jvmArguments);
+                        command.add("-cp");
+                        command.add(System.getProperty("java.class.path"));
+                        command.add(PCAWorker.class.getName());
+                        command.add(file.getAbsolutePath());
+                        command.add(String.valueOf(rows));
+                        command.add(String.valueOf(cols));
+                        command.add(String.valueOf(rowMajor));
+                        command.add(String.valueOf(from));
+                        command.add(String.valueOf(to));
+                        command.add(scaling.name());
+                        process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                        in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+                        out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+                }
+
+                /**
+                 * Waits for the worker to exit after its last reply.
+                 */
+                void finish(int index) throws IOException {
+                        out.close();
+                        try {
+                                int status = process.waitFor();
+                                if (status != 0) {
+                                        throw new IOException("Worker " + index + " exited with status " + status);
+                                }
+                        } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new IOException("Interrupted while waiting for worker " + index);
+                        }
+                }
+        }
+
+        /**
+         * Merged statistics and components of a run.
+         */
+        static class Result {
+
+                final Standardizer statistics;
+                /* Loadings sigma * v, one array of length cols per component */
+                final double[][] t;
+                /* Unit scores X v / sigma, one array of length rows per component */
+                final double[][] p;
+                /* Squared norm of every standardized row */
+                final double[] rowSumOfSquares;
+
+                Result(Standardizer statistics, double[][] t, double[][] p, double[] rowSumOfSquares) {
+                        this.statistics = statistics;
+                        this.t = t;
+                        this.p = p;
+                        this.rowSumOfSquares = rowSumOfSquares;
+                }
+        }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the number of components by cross-validation. The rows are split
+ * into folds (row i goes to fold i % folds); a model is fitted on the other
+ * folds and every element of the held-out rows is predicted from the
+ * remaining elements of its row (Eastment and Krzanowski 1982). With
+ * orthonormal loadings V and s = sum of v_jc^2 over the first k components,
+ * the prediction of x_j is (v_j . V'x - s x_j) / (1 - s), so one fit of the
+ * largest model gives the PRESS of every smaller one.
+ *
+ * The folds run on a fixed pool of worker threads, each with its own
+ * preallocated buffers.
+ */
+public class PCACrossValidation {
+
+        private final int maxComponents;
+        private final int folds;
+        private final int parallelism;
+        private Scaling scaling = Scaling.MEAN_CENTER;
+
+        /**
+         * @param maxComponents Largest number of components evaluated
+         * @param folds Number of row folds, at least 2
+         * @param parallelism Number of folds evaluated at the same time, 1
+         * runs them on the calling thread
+         */
+        public PCACrossValidation(int maxComponents, int folds, int parallelism) {
+                if (maxComponents < 1 || folds < 2 || parallelism < 1) {
+                        throw new IllegalArgumentException("Need at least 1 component, 2 folds and 1 thread");
+                }
+                this.maxComponents = maxComponents;
+                this.folds = folds;
+                this.parallelism = parallelism;
+        }
+
+        /**
+         * Column preprocessing of every fold model. The statistics are
+         * computed on the training rows only and applied to the held-out rows.
+         * The default is MEAN_CENTER, which the PRESS criterion assumes; with
+         * NONE the model without components predicts zero instead of the
+         * column means.
+         */
+        public void setScaling(Scaling scaling) {
+                this.scaling = scaling;
+        }
+
+        /**
+         * Runs the cross-validation on X, one row per sample.
+         */
+        public Result run(Matrix X) throws InterruptedException {
+                final double[][] x = X.getArray();
+                if (x.length < folds) {
+                        throw new IllegalArgumentException(x.length + " rows cannot be split into " + folds + " folds");
+                }
+                final int cols = X.getColumnDimension();
+                final int k = Math.min(maxComponents, Math.min(x.length - (x.length + folds - 1) / folds, cols));
+                final double[][] press = new double[folds][];
+                final int[] fitted = new int[folds];
+                final long[] times = new long[folds];
+                final AtomicInteger nextFold = new AtomicInteger();
+
+                List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+                for (int w = 0; w < Math.min(parallelism, folds); w++) {
+                        workers.add(new Callable<Void>() {
+
+                                private final FoldWorkspace workspace = new FoldWorkspace(cols, k);
+
+                                public Void call() {
+                                        for (int f = nextFold.getAndIncrement(); f < folds; f = nextFold.getAndIncrement()) {
+                                                long start = System.nanoTime();
+                                                press[f] = new double[k + 1];
+                                                fitted[f] = runFold(x, f, k, press[f], workspace);
+                                                times[f] = System.nanoTime() - start;
+                                        }
+                                        return null;
+                                }
+                        });
+                }
+                if (workers.size() == 1) {
+                        try {
+                                workers.get(0).call();
+                        } catch (Exception e) {
+                                throw rethrow(e);
+                        }
+                } else {
+                        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+                        try {
+                                for (Future<Void> future : executor.invokeAll(workers)) {
+                                        try {
+                                                future.get();
+                                        } catch (ExecutionException e) {
+                                                throw rethrow(e.getCause());
+                                        }
+                                }
+                        } finally {
+                                executor.shutdown();
+                        }
+                }
+
+                // only the component counts that every fold could fit are compared
+                int common = k;
+                for (int f = 0; f < folds; f++) {
+                        common = Math.min(common, fitted[f]);
+                }
+                double[] total = new double[common + 1];
+                for (int f = 0; f < folds; f++) {
+                        for (int c = 0; c <= common; c++) {
+                                total[c] += press[f][c];
+                        }
+                }
+                return new Result(total, times);
+        }
+
+        /**
+         * Fits fold f and adds the PRESS of its held-out elements for 0 .. k
+         * components to press.
+         * @return Number of components the fold model could fit
+         */
+        private int runFold(double[][] x, int f, int k, double[] press, FoldWorkspace w) {
+                int rows = x.length;
+                int cols = w.x.length;
+                int test = (rows - f + folds - 1) / folds;
+                // the training rows are shared with X; PCA works on its own copy
+                double[][] train = new double[rows - test][];
+                for (int i = 0, r = 0; i < rows; i++) {
+                        if (i % folds != f) {
+                                train[r++] = x[i];
+                        }
+                }
+                PCA pca = new PCA(train.length, cols, k);
+                pca.setScaling(scaling);
+                pca.setWorkspace(w.nipals);
+                pca.nipals(new Matrix(train, train.length, cols), null, null);
+
+                int fitted = pca.getComponentCount();
+                for (int c = 0; c < fitted; c++) {
+                        double[] t = pca.getLoading(c);
+                        double norm = Math.sqrt(dot(t, t));
+                        for (int j = 0; j < cols; j++) {
+                                w.V[j][c] = t[j] / norm;
+                        }
+                }
+                Standardizer standardizer = pca.getStandardizer();
+                double[] mean = standardizer != null ? standardizer.getMean() : null;
+                double[] scale = standardizer != null ? standardizer.getScale() : null;
+
+                for (int i = f; i < rows; i += folds) {
+                        for (int j = 0; j < cols; j++) {
+                                w.x[j] = mean != null ? (x[i][j] - mean[j]) / scale[j] : x[i][j];
+                        }
+                        for (int c = 0; c < fitted; c++) {
+                                double sum = 0;
+                                for (int j = 0; j < cols; j++) {
+                                        sum += w.V[j][c] * w.x[j];
+                                }
+                                w.projection[c] = sum;
+                        }
+                        for (int j = 0; j < cols; j++) {
+                                double xj = w.x[j];
+                                double[] v = w.V[j];
+                                double s = 0;
+                                double fit = 0;
+                                press[0] += xj * xj;
+                                for (int c = 0; c < fitted; c++) {
+                                        s += v[c] * v[c];
+                                        fit += v[c] * w.projection[c];
+                                        // a variable inside the model space has no
+                                        // leave-one-out prediction; use the plain fit
+                                        double predicted = s < 1 - 1e-12 ? (fit - s * xj) / (1 - s) : fit;
+                                        double error = xj - predicted;
+                                        press[c + 1] += error * error;
+                                }
+                        }
+                }
+                return fitted;
+        }
+
+        private static RuntimeException rethrow(Throwable cause) {
+                if (cause instanceof Error) {
+                        throw (Error) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                        return (RuntimeException) cause;
+                }
+                return new RuntimeException(cause);
+        }
+
+        private static double dot(double[] a, double[] b) {
+                return MatrixKernels.dot(a, b);
+        }
+
+        /**
+         * Buffers owned by one worker thread and reused for all its folds.
+         */
+        private static class FoldWorkspace {
+
+                final NipalsWorkspace nipals;
+                /* Orthonormal loadings, one row per variable */
+                final double[][] V;
+                /* Standardized held-out row and its projection on V */
+                final double[] x;
+                final double[] projection;
+
+                FoldWorkspace(int cols, int k) {
+                        nipals = new NipalsWorkspace(0, cols);
+                        V = new double[cols][k];
+                        x = new double[cols];
+                        projection = new double[k];
+                }
+        }
+
+        /**
+         * Outcome of a cross-validation run.
+         */
+        public static class Result {
+
+                private final double[] press;
+                private final long[] foldTimes;
+
+                Result(double[] press, long[] foldTimes) {
+                        this.press = press;
+                        this.foldTimes = foldTimes;
+                }
+
+                /**
+                 * @return Number of components with the smallest PRESS, 0 when
+                 * no component predicts the held-out values better than the
+                 * column means (zero with Scaling.NONE)
+                 */
+                public int getRecommendedComponents() {
+                        int best = 0;
+                        for (int c = 1; c < press.length; c++) {
+                                if (press[c] < press[best]) {
+                                        best = c;
+                                }
+                        }
+                        return best;
+                }
+
+                /**
+                 * @return PRESS summed over all folds, indexed by the number of
+                 * components (0 .. evaluated maximum)
+                 */
+                public double[] getPress() {
+                        return press.clone();
+                }
+
+                /**
+                 * @return Wall-clock time of every fold in milliseconds
+                 */
+                public double[] getFoldTimes() {
+                        double[] ms = new double[foldTimes.length];
+                        for (int f = 0; f < ms.length; f++) {
+                                ms[f] = foldTimes[f] / 1e6;
+                        }
+                        return ms;
+                }
+        }
+}
@@ -18,6 +18,7 @@
 package dr;
 
 import Jama.Matrix;
+import java.nio.DoubleBuffer;
 import org.jfree.data.xy.AbstractXYDataset;
 
 /**
@@ -26,18 +27,40 @@ import org.jfree.data.xy.AbstractXYDataset;
  */
 public class PCADataset extends AbstractXYDataset implements PCADatasetInterface {
        
-        private double[] x, y;
+        private DoubleBuffer x, y;
         private String[] names;
         private String Xlabel, Ylabel;
+        /* Items highlighted by PlotRenderer, null when none */
+        private boolean[] outliers;
 
         public PCADataset(Matrix X, String[] rowNames, String Xlabel, String Ylabel ) {
-                x = X.getMatrix(0, X.getRowDimension() - 1, 0, 0).getColumnPackedCopy();
-                y = X.getMatrix(0, X.getRowDimension() - 1, 1, 1).getColumnPackedCopy();
+                x = DoubleBuffer.wrap(X.getMatrix(0, X.getRowDimension() - 1, 0, 0).getColumnPackedCopy());
+                y = DoubleBuffer.wrap(X.getMatrix(0, X.getRowDimension() - 1, 1, 1).getColumnPackedCopy());
                 names = rowNames;
                 this.Xlabel = Xlabel;
                 this.Ylabel = Ylabel;
         }
 
+        /**
+         * Dataset over the given coordinates, which are used as they are and
+         * not copied.
+         */
+        public PCADataset(double[] x, double[] y, String[] names, String Xlabel, String Ylabel) {
+                this(DoubleBuffer.wrap(x), DoubleBuffer.wrap(y), names, Xlabel, Ylabel);
+        }
+
+        /**
+         * Dataset reading its coordinates from the given buffers, for example
+         * the mapped vectors of a PCAModel.
+         */
+        public PCADataset(DoubleBuffer x, DoubleBuffer y, String[] names, String Xlabel, String Ylabel) {
+                this.x = x;
+                this.y = y;
+                this.names = names;
+                this.Xlabel = Xlabel;
+                this.Ylabel = Ylabel;
+        }
+
         @Override
         public int getSeriesCount() {
                 return 1;
@@ -49,19 +72,32 @@ public class PCADataset extends AbstractXYDataset implements PCADatasetInterface
         }
 
         public int getItemCount(int i) {
-                return names.length;
+                // the names are optional, the coordinates are not
+                return x.limit();
         }
 
         public Number getX(int i, int i1) {
-                return x[i1];
+                return x.get(i1);
         }
 
         public Number getY(int i, int i1) {
-                return y[i1];
+                return y.get(i1);
         }
 
         public String getVariableName(int item) {
-               return names[item];
+               return names != null ? names[item] : null;
+        }
+
+        /**
+         * Marks items to be highlighted in the plot, for example the samples
+         * outside the limits of PCADiagnostics.
+         */
+        public void setOutliers(boolean[] outliers) {
+                this.outliers = outliers;
+        }
+
+        public boolean isOutlier(int item) {
+                return outliers != null && outliers[item];
         }
 
         public String getXLabel() {
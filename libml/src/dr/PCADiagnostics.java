@@ -0,0 +1,158 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.BetaDistributionImpl;
+import org.apache.commons.math.distribution.ChiSquaredDistributionImpl;
+
+/**
+ * Per-sample quality control statistics of a fit: Hotelling's T^2, the
+ * distance of a sample from the centre within the model plane, and Q (the
+ * squared prediction error), its squared distance from the plane. Both are
+ * accumulated while the components are stored, from the unit score vectors
+ * and the row sums of squares of the data, so they cost no pass over the
+ * data. Q is only known for fits that hold the data in memory and for TSQR
+ * fits. T^2 measures the distance from the mean, so it is only known for
+ * fits with a scaling and for fits on data stated to be centered, see
+ * PCA.setCentered.
+ *
+ * The samples are those the model was fitted on, so the T^2 limit is the
+ * one for training samples, (n - 1)^2 / n Beta(k / 2, (n - k - 1) / 2)
+ * (Tracy, Young and Mason 1992), and the Q limit is the g * chi^2(h)
+ * approximation of Box, with g and h matched to the mean and variance of
+ * the Q values (Nomikos and MacGregor 1995).
+ */
+public class PCADiagnostics {
+
+        private final double[] tSquared;
+        private final double[] q;
+        private final int components;
+
+        /**
+         * @param tSquared T^2 values, null when the data was not centered
+         * @param q Q values, null when the row sums of squares are unknown
+         */
+        PCADiagnostics(double[] tSquared, double[] q, int components) {
+                this.tSquared = tSquared;
+                this.q = q;
+                this.components = components;
+        }
+
+        public int getComponentCount() {
+                return components;
+        }
+
+        public boolean hasHotellingT2() {
+                return tSquared != null;
+        }
+
+        /**
+         * @return Hotelling's T^2 of every sample, null when it is not known
+         */
+        public double[] getHotellingT2() {
+                return tSquared != null ? tSquared.clone() : null;
+        }
+
+        public boolean hasQ() {
+                return q != null;
+        }
+
+        /**
+         * @return Q of every sample, null when it is not known
+         */
+        public double[] getQ() {
+                if (q == null) {
+                        return null;
+                }
+                double[] copy = new double[q.length];
+                for (int i = 0; i < q.length; i++) {
+                        // the incremental differences can round slightly below zero
+                        copy[i] = Math.max(0, q[i]);
+                }
+                return copy;
+        }
+
+        /**
+         * @param confidence For example 0.95
+         * @return Upper confidence limit of T^2 of the training samples,
+         * infinite when there are fewer than k + 2 samples
+         */
+        public double getT2Limit(double confidence) {
+                if (tSquared == null) {
+                        throw new IllegalStateException("T^2 is not known for a fit without centering");
+                }
+                int n = tSquared.length;
+                int k = components;
+                if (n <= k + 1) {
+                        return Double.POSITIVE_INFINITY;
+                }
+                try {
+                        double b = new BetaDistributionImpl(k / 2.0, (n - k - 1) / 2.0).inverseCumulativeProbability(confidence);
+                        return (n - 1.0) * (n - 1.0) / n * b;
+                } catch (MathException e) {
+                        throw new IllegalStateException(e);
+                }
+        }
+
+        /**
+         * @param confidence For example 0.95
+         * @return Upper confidence limit of Q, 0 when the model explains all
+         * variance
+         */
+        public double getQLimit(double confidence) {
+                if (q == null) {
+                        throw new IllegalStateException("Q is not known for this fit");
+                }
+                double[] values = getQ();
+                double mean = 0;
+                for (double v : values) {
+                        mean += v;
+                }
+                mean /= values.length;
+                double variance = 0;
+                for (double v : values) {
+                        variance += (v - mean) * (v - mean);
+                }
+                variance /= Math.max(1, values.length - 1);
+                if (mean <= 0 || variance <= 0) {
+                        return mean;
+                }
+                double g = variance / (2 * mean);
+                double h = 2 * mean * mean / variance;
+                try {
+                        return g * new ChiSquaredDistributionImpl(h).inverseCumulativeProbability(confidence);
+                } catch (MathException e) {
+                        throw new IllegalStateException(e);
+                }
+        }
+
+        /**
+         * @return Whether each sample is above the T^2 limit or the Q limit,
+         * of those that are known
+         */
+        public boolean[] getOutliers(double confidence) {
+                double tLimit = tSquared != null ? getT2Limit(confidence) : Double.POSITIVE_INFINITY;
+                double qLimit = q != null ? getQLimit(confidence) : Double.POSITIVE_INFINITY;
+                boolean[] outliers = new boolean[tSquared != null ? tSquared.length : q.length];
+                for (int i = 0; i < outliers.length; i++) {
+                        outliers[i] = (tSquared != null && tSquared[i] > tLimit) || (q != null && q[i] > qLimit);
+                }
+                return outliers;
+        }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Measurements of one PCA fit. Times are wall-clock times of the fitting
+ * thread; the allocated bytes are those of the fitting thread only, so work
+ * done on pool threads is not included, and are -1 when the JVM cannot
+ * measure them.
+ */
+public class PCAFitStatistics {
+
+        private final PCAStrategy strategy;
+        private final int rows;
+        private final int cols;
+        private final long fitTime;
+        private final long standardizationTime;
+        private final long deflationTime;
+        private final int[] iterations;
+        private final double[] residuals;
+        private final boolean converged;
+        private final long allocatedBytes;
+
+        PCAFitStatistics(PCAStrategy strategy, int rows, int cols, long fitTime, long standardizationTime,
+                long deflationTime, int[] iterations, double[] residuals, boolean converged, long allocatedBytes) {
+                this.strategy = strategy;
+                this.rows = rows;
+                this.cols = cols;
+                this.fitTime = fitTime;
+                this.standardizationTime = standardizationTime;
+                this.deflationTime = deflationTime;
+                this.iterations = iterations;
+                this.residuals = residuals;
+                this.converged = converged;
+                this.allocatedBytes = allocatedBytes;
+        }
+
+        public PCAStrategy getStrategy() {
+                return strategy;
+        }
+
+        public int getRowCount() {
+                return rows;
+        }
+
+        public int getColumnCount() {
+                return cols;
+        }
+
+        /**
+         * @return Duration of the whole fit in milliseconds
+         */
+        public double getFitTime() {
+                return fitTime / 1e6;
+        }
+
+        /**
+         * @return Time spent computing and applying the scaling, in
+         * milliseconds
+         */
+        public double getStandardizationTime() {
+                return standardizationTime / 1e6;
+        }
+
+        /**
+         * @return Time spent deflating the residual matrix, in milliseconds.
+         * Zero for the strategies that deflate implicitly.
+         */
+        public double getDeflationTime() {
+                return deflationTime / 1e6;
+        }
+
+        /**
+         * @return Iterations of every component
+         */
+        public int[] getIterations() {
+                return iterations.clone();
+        }
+
+        /**
+         * @return Final convergence measure of every component: the change of
+         * the loading vector for nipals, the relative eigenvector residual
+         * for subspace iteration, 0 for the direct strategies
+         */
+        public double[] getResiduals() {
+                return residuals.clone();
+        }
+
+        /**
+         * @return false when an iterative fit stopped at its iteration limit
+         */
+        public boolean isConverged() {
+                return converged;
+        }
+
+        public long getAllocatedBytes() {
+                return allocatedBytes;
+        }
+
+        /**
+         * @return Largest iteration count of any component
+         */
+        public int getMaxIterations() {
+                int max = 0;
+                for (int i : iterations) {
+                        max = Math.max(max, i);
+                }
+                return max;
+        }
+
+        /**
+         * @return Largest residual of any component
+         */
+        public double getMaxResidual() {
+                double max = 0;
+                for (double r : residuals) {
+                        max = Math.max(max, r);
+                }
+                return max;
+        }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Receives progress events from the fit methods of PCA. The events are sent
+ * on the thread that runs the fit.
+ */
+public interface PCAListener {
+
+        public void fitStarted(PCA pca, PCAStrategy strategy);
+
+        /**
+         * @param iterations Iterations the component needed, 0 for the
+         * strategies that decompose the data directly
+         * @param residual Convergence measure of the component when it was
+         * accepted, 0 for the direct strategies
+         */
+        public void componentExtracted(PCA pca, int component, int iterations, double residual);
+
+        public void fitFinished(PCA pca, PCAFitStatistics statistics);
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Fitted PCA model stored in a binary file and memory-mapped when loaded.
+ * The eigenvalues, loadings and scores are read-only views of the mapping,
+ * so loading does not parse or copy them; only the names and the column
+ * preprocessing are read onto the heap. The plots and the projection of
+ * new samples read the mapped values directly.
+ *
+ * The file is big-endian, as written by DataOutputStream:
+ *
+ * int magic, int version, int rows, int cols, int components,
+ * string scaling, string strategy, byte flags, double total variance,
+ * the eigenvalues, the loadings (cols values per component), the unit
+ * scores (rows values per component), the column means and scales when the
+ * data was standardized (flag 1), the column names (flag 2), the row
+ * names (flag 4) and the Q values of the samples (flag 8). Flag 16 marks
+ * data that was centered before a fit without scaling, so that T^2 is
+ * known. A string is an int byte count, -1 for null, followed by UTF-8
+ * bytes.
+ */
+public class PCAModel {
+
+        private static final int MAGIC = 0x50434d46;
+        private static final int VERSION = 1;
+        private static final int STANDARDIZED = 1;
+        private static final int COLUMN_NAMES = 2;
+        private static final int ROW_NAMES = 4;
+        private static final int RESIDUALS = 8;
+        private static final int CENTERED = 16;
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+        private final int rows;
+        private final int cols;
+        private final Scaling scaling;
+        private final PCAStrategy strategy;
+        private final PCAResult result;
+        /* Column preprocessing, null when the data was not standardized */
+        private final double[] mean;
+        private final double[] scale;
+        private ScoreProjector projector;
+
+        private PCAModel(int rows, int cols, Scaling scaling, PCAStrategy strategy, PCAResult result,
+                double[] mean, double[] scale) {
+                this.rows = rows;
+                this.cols = cols;
+                this.scaling = scaling;
+                this.strategy = strategy;
+                this.result = result;
+                this.mean = mean;
+                this.scale = scale;
+        }
+
+        /**
+         * Writes the last fit of pca to file.
+         */
+        static void write(PCA pca, File file) throws IOException {
+                PCAFitStatistics statistics = pca.getFitStatistics();
+                if (statistics == null) {
+                        throw new IllegalStateException("The model has not been fitted");
+                }
+                PCAResult result = pca.getResult();
+                Standardizer standardizer = pca.getStandardizer();
+                int k = result.getComponentCount();
+                PCADiagnostics diagnostics = result.getDiagnostics();
+                int flags = (standardizer != null ? STANDARDIZED : 0)
+                        | (result.getColumnNames() != null ? COLUMN_NAMES : 0)
+                        | (result.getRowNames() != null ? ROW_NAMES : 0)
+                        | (diagnostics != null && diagnostics.hasQ() ? RESIDUALS : 0)
+                        | (standardizer == null && diagnostics != null && diagnostics.hasHotellingT2() ? CENTERED : 0);
+
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                try {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeInt(statistics.getRowCount());
+                        out.writeInt(statistics.getColumnCount());
+                        out.writeInt(k);
+                        // the scaling of the fit, setScaling may have changed it since
+                        writeString(out, (standardizer != null ? standardizer.getScaling() : Scaling.NONE).name());
+                        writeString(out, statistics.getStrategy().name());
+                        out.writeByte(flags);
+                        out.writeDouble(result.getTotalVariance());
+                        writeVector(out, result.getEigenvalues());
+                        for (int c = 0; c < k; c++) {
+                                writeVector(out, result.getLoadings(c));
+                        }
+                        for (int c = 0; c < k; c++) {
+                                writeVector(out, result.getScores(c));
+                        }
+                        if (standardizer != null) {
+                                writeVector(out, DoubleBuffer.wrap(standardizer.getMean()));
+                                writeVector(out, DoubleBuffer.wrap(standardizer.getScale()));
+                        }
+                        if (result.getColumnNames() != null) {
+                                writeStrings(out, result.getColumnNames());
+                        }
+                        if (result.getRowNames() != null) {
+                                writeStrings(out, result.getRowNames());
+                        }
+                        if ((flags & RESIDUALS) != 0) {
+                                writeVector(out, DoubleBuffer.wrap(diagnostics.getQ()));
+                        }
+                } finally {
+                        out.close();
+                }
+        }
+
+        /**
+         * Maps a model written by PCA.save. The mapping stays valid after the
+         * file is closed.
+         */
+        public static PCAModel load(File file) throws IOException {
+                MappedByteBuffer buffer;
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                        FileChannel channel = raf.getChannel();
+                        if (channel.size() > Integer.MAX_VALUE) {
+                                throw new IOException(file + " is too large for a model file");
+                        }
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                        raf.close();
+                }
+                try {
+                        if (buffer.getInt() != MAGIC) {
+                                throw new IOException(file + " is not a PCA model file");
+                        }
+                        int version = buffer.getInt();
+                        if (version != VERSION) {
+                                throw new IOException(file + " has model format version " + version
+                                        + ", expected " + VERSION);
+                        }
+                        int rows = buffer.getInt();
+                        int cols = buffer.getInt();
+                        int k = buffer.getInt();
+                        Scaling scaling = Scaling.valueOf(readString(buffer));
+                        PCAStrategy strategy = PCAStrategy.valueOf(readString(buffer));
+                        int flags = buffer.get();
+                        double totalVariance = buffer.getDouble();
+
+                        DoubleBuffer eigenValues = mapVector(buffer, k);
+                        DoubleBuffer[] loadings = new DoubleBuffer[k];
+                        for (int c = 0; c < k; c++) {
+                                loadings[c] = mapVector(buffer, cols);
+                        }
+                        DoubleBuffer[] scores = new DoubleBuffer[k];
+                        for (int c = 0; c < k; c++) {
+                                scores[c] = mapVector(buffer, rows);
+                        }
+                        double[] mean = null;
+                        double[] scale = null;
+                        if ((flags & STANDARDIZED) != 0) {
+                                mean = new double[cols];
+                                scale = new double[cols];
+                                mapVector(buffer, cols).get(mean);
+                                mapVector(buffer, cols).get(scale);
+                        }
+                        String[] columnNames = (flags & COLUMN_NAMES) != 0 ? readStrings(buffer) : null;
+                        String[] rowNames = (flags & ROW_NAMES) != 0 ? readStrings(buffer) : null;
+                        double[] q = null;
+                        if ((flags & RESIDUALS) != 0) {
+                                q = new double[rows];
+                                mapVector(buffer, rows).get(q);
+                        }
+                        double[] tSquared = scaling != Scaling.NONE || (flags & CENTERED) != 0
+                                ? hotellingT2(scores, rows) : null;
+                        PCAResult result = new PCAResult(eigenValues, loadings, scores, totalVariance,
+                                columnNames, rowNames, k > 0 && (tSquared != null || q != null)
+                                ? new PCADiagnostics(tSquared, q, k) : null);
+                        return new PCAModel(rows, cols, scaling, strategy, result, mean, scale);
+                } catch (RuntimeException e) {
+                        // BufferUnderflowException or an unknown enum name
+                        throw new IOException(file + " is not a valid PCA model file: " + e);
+                }
+        }
+
+        public int getRowCount() {
+                return rows;
+        }
+
+        public int getColumnCount() {
+                return cols;
+        }
+
+        public Scaling getScaling() {
+                return scaling;
+        }
+
+        /**
+         * @return Algorithm the model was fitted with
+         */
+        public PCAStrategy getStrategy() {
+                return strategy;
+        }
+
+        /**
+         * @return Views of the mapped eigenvalues, loadings and scores
+         */
+        public PCAResult getResult() {
+                return result;
+        }
+
+        /**
+         * Projects new samples on the model, as PCA.transform.
+         * @param X New samples, one row per sample and one column per variable
+         * @return Scores with one row per sample and one column per component
+         */
+        public double[][] transform(double[][] X) {
+                return getProjector().project(X);
+        }
+
+        /**
+         * Projects a block of new samples stored row after row in X.
+         * @param scores Receives nRows * component count scores, row after row
+         */
+        public void transform(double[] X, int nRows, double[] scores) {
+                getProjector().project(X, nRows, scores);
+        }
+
+        public PlotPanel loadingsplot(String Xlabel, String Ylabel) {
+                return new PlotPanel(result.loadingsDataset(0, 1, Xlabel, Ylabel));
+        }
+
+        public PlotPanel scoresplot(String Xlabel, String Ylabel) {
+                return new PlotPanel(result.scoresDataset(0, 1, Xlabel, Ylabel));
+        }
+
+        private synchronized ScoreProjector getProjector() {
+                if (projector == null) {
+                        projector = new ScoreProjector(result, mean, scale);
+                }
+                return projector;
+        }
+
+        /**
+         * @return T^2 of every sample, (n - 1) times its sum of squared unit
+         * scores
+         */
+        private static double[] hotellingT2(DoubleBuffer[] scores, int rows) {
+                double[] tSquared = new double[rows];
+                for (DoubleBuffer p : scores) {
+                        for (int i = 0; i < rows; i++) {
+                                tSquared[i] += (rows - 1) * p.get(i) * p.get(i);
+                        }
+                }
+                return tSquared;
+        }
+
+        /**
+         * @return View of the next n doubles of buffer, which is advanced
+         * past them
+         */
+        private static DoubleBuffer mapVector(ByteBuffer buffer, int n) {
+                DoubleBuffer vector = buffer.slice().asDoubleBuffer();
+                vector.limit(n);
+                buffer.position(buffer.position() + 8 * n);
+                return vector.slice();
+        }
+
+        private static void writeVector(DataOutputStream out, DoubleBuffer vector) throws IOException {
+                for (int i = 0; i < vector.limit(); i++) {
+                        out.writeDouble(vector.get(i));
+                }
+        }
+
+        private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+                out.writeInt(strings.length);
+                for (String s : strings) {
+                        writeString(out, s);
+                }
+        }
+
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+                if (s == null) {
+                        out.writeInt(-1);
+                } else {
+                        byte[] bytes = s.getBytes(UTF8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                }
+        }
+
+        private static String[] readStrings(ByteBuffer buffer) {
+                String[] strings = new String[buffer.getInt()];
+                for (int i = 0; i < strings.length; i++) {
+                        strings[i] = readString(buffer);
+                }
+                return strings;
+        }
+
+        private static String readString(ByteBuffer buffer) {
+                int length = buffer.getInt();
+                if (length < 0) {
+                        return null;
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                return new String(bytes, UTF8);
+        }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Listener that aggregates the statistics of every fit it is added to and
+ * publishes them as an MBean, so that monitoring can alert on slow or
+ * non-converging fits. One monitor can be shared by many PCA instances.
+ */
+public class PCAMonitor implements PCAMonitorMBean, PCAListener {
+
+        private long fitCount;
+        private double totalFitTime;
+        private double maxFitTime;
+        private PCAFitStatistics last;
+        private long totalAllocatedBytes;
+        private long slowFitCount;
+        private double slowFitThreshold = 10000;
+        private long unconvergedFitCount;
+        /* Below the NIPALS cap, whose hits already count as unconverged */
+        private int iterationLimit = PCA.MAX_NIPALS_ITERATIONS / 10;
+        private ObjectName name;
+
+        /**
+         * Registers the monitor with the platform MBean server as
+         * dr:type=PCAMonitor,name=[name].
+         */
+        public synchronized ObjectName register(String name) throws JMException {
+                ObjectName objectName = new ObjectName("dr:type=PCAMonitor,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+                this.name = objectName;
+                return objectName;
+        }
+
+        public synchronized void unregister() throws JMException {
+                if (name != null) {
+                        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                        server.unregisterMBean(name);
+                        name = null;
+                }
+        }
+
+        public void fitStarted(PCA pca, PCAStrategy strategy) {
+        }
+
+        public void componentExtracted(PCA pca, int component, int iterations, double residual) {
+        }
+
+        public synchronized void fitFinished(PCA pca, PCAFitStatistics statistics) {
+                double time = statistics.getFitTime();
+                fitCount++;
+                totalFitTime += time;
+                maxFitTime = Math.max(maxFitTime, time);
+                if (statistics.getAllocatedBytes() > 0) {
+                        totalAllocatedBytes += statistics.getAllocatedBytes();
+                }
+                if (time > slowFitThreshold) {
+                        slowFitCount++;
+                }
+                if (!statistics.isConverged() || statistics.getMaxIterations() > iterationLimit) {
+                        unconvergedFitCount++;
+                }
+                last = statistics;
+        }
+
+        public synchronized long getFitCount() {
+                return fitCount;
+        }
+
+        public synchronized double getLastFitTime() {
+                return last != null ? last.getFitTime() : 0;
+        }
+
+        public synchronized double getMaxFitTime() {
+                return maxFitTime;
+        }
+
+        public synchronized double getAverageFitTime() {
+                return fitCount > 0 ? totalFitTime / fitCount : 0;
+        }
+
+        public synchronized double getLastStandardizationTime() {
+                return last != null ? last.getStandardizationTime() : 0;
+        }
+
+        public synchronized double getLastDeflationTime() {
+                return last != null ? last.getDeflationTime() : 0;
+        }
+
+        public synchronized String getLastStrategy() {
+                return last != null ? last.getStrategy().name() : null;
+        }
+
+        public synchronized int getLastMaxIterations() {
+                return last != null ? last.getMaxIterations() : 0;
+        }
+
+        public synchronized double getLastMaxResidual() {
+                return last != null ? last.getMaxResidual() : 0;
+        }
+
+        public synchronized long getTotalAllocatedBytes() {
+                return totalAllocatedBytes;
+        }
+
+        public synchronized long getSlowFitCount() {
+                return slowFitCount;
+        }
+
+        public synchronized double getSlowFitThreshold() {
+                return slowFitThreshold;
+        }
+
+        public synchronized void setSlowFitThreshold(double milliseconds) {
+                slowFitThreshold = milliseconds;
+        }
+
+        public synchronized long getUnconvergedFitCount() {
+                return unconvergedFitCount;
+        }
+
+        public synchronized int getIterationLimit() {
+                return iterationLimit;
+        }
+
+        public synchronized void setIterationLimit(int iterations) {
+                iterationLimit = iterations;
+        }
+
+        public synchronized void reset() {
+                fitCount = 0;
+                totalFitTime = 0;
+                maxFitTime = 0;
+                last = null;
+                totalAllocatedBytes = 0;
+                slowFitCount = 0;
+                unconvergedFitCount = 0;
+        }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * JMX view of the PCA fits observed by a PCAMonitor. Times are in
+ * milliseconds.
+ */
+public interface PCAMonitorMBean {
+
+        public long getFitCount();
+
+        public double getLastFitTime();
+
+        public double getMaxFitTime();
+
+        public double getAverageFitTime();
+
+        public double getLastStandardizationTime();
+
+        public double getLastDeflationTime();
+
+        public String getLastStrategy();
+
+        public int getLastMaxIterations();
+
+        public double getLastMaxResidual();
+
+        public long getTotalAllocatedBytes();
+
+        /**
+         * @return Number of fits that took longer than the slow fit threshold
+         */
+        public long getSlowFitCount();
+
+        public double getSlowFitThreshold();
+
+        public void setSlowFitThreshold(double milliseconds);
+
+        /**
+         * @return Number of fits that did not converge, or needed more
+         * iterations for some component than the iteration limit
+         */
+        public long getUnconvergedFitCount();
+
+        /**
+         * @return Iterations per component above which a converged fit is
+         * still counted, by default a tenth of the NIPALS cap. Fits stopped
+         * at the cap are counted as not converged whatever the limit.
+         */
+        public int getIterationLimit();
+
+        public void setIterationLimit(int iterations);
+
+        public void reset();
+}
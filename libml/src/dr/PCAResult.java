@@ -0,0 +1,234 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Results of one PCA fit as read-only views over the fitted arrays, or over
+ * the buffers of a model file mapped by PCAModel. Nothing is copied unless
+ * one of the copy methods is called, and the order of the components by
+ * decreasing eigenvalue is computed once. The fitted arrays are never
+ * written again, so a result can be shared between threads and outlives
+ * later fits of the same model.
+ */
+public class PCAResult {
+
+        private final DoubleBuffer eigenValues;
+        /* Loadings (length cols) and unit scores (length rows) per component */
+        private final DoubleBuffer[] loadings;
+        private final DoubleBuffer[] scores;
+        private final int nComponents;
+        private final double totalVariance;
+        private final String[] columnNames;
+        private final String[] rowNames;
+        private final PCADiagnostics diagnostics;
+        private int[] sortedOrder;
+
+        PCAResult(double[] eigenValues, double[][] loadings, double[][] scores, int nComponents,
+                double totalVariance, String[] columnNames, String[] rowNames, PCADiagnostics diagnostics) {
+                this(DoubleBuffer.wrap(eigenValues, 0, nComponents).slice(), wrap(loadings, nComponents),
+                        wrap(scores, nComponents), totalVariance, columnNames, rowNames, diagnostics);
+        }
+
+        /**
+         * @param eigenValues One value per component
+         * @param loadings Buffers of length cols, one per component
+         * @param scores Buffers of length rows, one per component
+         * @param diagnostics T^2 and Q of the samples, null without components
+         */
+        PCAResult(DoubleBuffer eigenValues, DoubleBuffer[] loadings, DoubleBuffer[] scores,
+                double totalVariance, String[] columnNames, String[] rowNames, PCADiagnostics diagnostics) {
+                this.eigenValues = eigenValues;
+                this.loadings = loadings;
+                this.scores = scores;
+                this.nComponents = eigenValues.remaining();
+                this.totalVariance = totalVariance;
+                this.columnNames = columnNames;
+                this.rowNames = rowNames;
+                this.diagnostics = diagnostics;
+        }
+
+        public int getComponentCount() {
+                return nComponents;
+        }
+
+        /**
+         * @return Hotelling's T^2 and Q of the fitted samples, null when no
+         * component was fitted
+         */
+        public PCADiagnostics getDiagnostics() {
+                return diagnostics;
+        }
+
+        public double getEigenvalue(int component) {
+                check(component);
+                return eigenValues.get(component);
+        }
+
+        /**
+         * @return Read-only view of the eigenvalues of all components
+         */
+        public DoubleBuffer getEigenvalues() {
+                return eigenValues.asReadOnlyBuffer();
+        }
+
+        /**
+         * @return Fraction of the total variance explained by the component
+         */
+        public double getExplainedVariance(int component) {
+                check(component);
+                return eigenValues.get(component) / totalVariance;
+        }
+
+        /**
+         * @return Read-only view of the loading vector, one value per variable
+         */
+        public DoubleBuffer getLoadings(int component) {
+                check(component);
+                return loadings[component].asReadOnlyBuffer();
+        }
+
+        /**
+         * @return Read-only view of the unit score vector, one value per
+         * sample
+         */
+        public DoubleBuffer getScores(int component) {
+                check(component);
+                return scores[component].asReadOnlyBuffer();
+        }
+
+        public double[] copyEigenvalues() {
+                return copy(eigenValues);
+        }
+
+        public double[] copyLoadings(int component) {
+                check(component);
+                return copy(loadings[component]);
+        }
+
+        public double[] copyScores(int component) {
+                check(component);
+                return copy(scores[component]);
+        }
+
+        /**
+         * @return Index of the component with the given rank by decreasing
+         * eigenvalue
+         */
+        public int getSortedIndex(int rank) {
+                return sortedOrder()[rank];
+        }
+
+        /**
+         * @return Copy of the component indexes by decreasing eigenvalue
+         */
+        public int[] getSortedOrder() {
+                return sortedOrder().clone();
+        }
+
+        private synchronized int[] sortedOrder() {
+                if (sortedOrder == null) {
+                        int[] order = new int[nComponents];
+                        for (int i = 0; i < nComponents; i++) {
+                                order[i] = i;
+                        }
+                        // insertion sort: the fits already produce (nearly) sorted components
+                        for (int i = 1; i < nComponents; i++) {
+                                int c = order[i];
+                                int j = i - 1;
+                                while (j >= 0 && eigenValues.get(order[j]) < eigenValues.get(c)) {
+                                        order[j + 1] = order[j];
+                                        j--;
+                                }
+                                order[j + 1] = c;
+                        }
+                        sortedOrder = order;
+                }
+                return sortedOrder;
+        }
+
+        /**
+         * @return Scores plot dataset of two components, sharing the score
+         * arrays instead of copying them
+         */
+        public PCADataset scoresDataset(int xComponent, int yComponent, String Xlabel, String Ylabel) {
+                check(xComponent);
+                check(yComponent);
+                return new PCADataset(scores[xComponent], scores[yComponent], rowNames, Xlabel, Ylabel);
+        }
+
+        /**
+         * @return Scores plot dataset of two components with the samples
+         * outside the T^2 or Q limit at the given confidence marked as
+         * outliers
+         */
+        public PCADataset scoresDataset(int xComponent, int yComponent, String Xlabel, String Ylabel,
+                double confidence) {
+                PCADataset dataset = scoresDataset(xComponent, yComponent, Xlabel, Ylabel);
+                if (diagnostics != null) {
+                        dataset.setOutliers(diagnostics.getOutliers(confidence));
+                }
+                return dataset;
+        }
+
+        /**
+         * @return Loadings plot dataset of two components, sharing the
+         * loading arrays instead of copying them
+         */
+        public PCADataset loadingsDataset(int xComponent, int yComponent, String Xlabel, String Ylabel) {
+                check(xComponent);
+                check(yComponent);
+                return new PCADataset(loadings[xComponent], loadings[yComponent], columnNames, Xlabel, Ylabel);
+        }
+
+        /**
+         * @return Total variance of the standardized data
+         */
+        double getTotalVariance() {
+                return totalVariance;
+        }
+
+        String[] getColumnNames() {
+                return columnNames;
+        }
+
+        String[] getRowNames() {
+                return rowNames;
+        }
+
+        private static DoubleBuffer[] wrap(double[][] vectors, int n) {
+                DoubleBuffer[] buffers = new DoubleBuffer[n];
+                for (int c = 0; c < n; c++) {
+                        buffers[c] = DoubleBuffer.wrap(vectors[c]);
+                }
+                return buffers;
+        }
+
+        private static double[] copy(DoubleBuffer buffer) {
+                double[] copy = new double[buffer.remaining()];
+                buffer.duplicate().get(copy);
+                return copy;
+        }
+
+        private void check(int component) {
+                if (component < 0 || component >= nComponents) {
+                        throw new IndexOutOfBoundsException("Component " + component + " of " + nComponents);
+                }
+        }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Algorithms used by PCA to compute the components.
+ */
+public enum PCAStrategy {
+
+        /* Iterative NIPALS with deflation */
+        NIPALS,
+        /* Eigendecomposition of the n x n matrix X*X' */
+        GRAM,
+        /* Eigendecomposition of the p x p matrix X'*X */
+        COVARIANCE,
+        /* Randomized range-finder SVD */
+        RANDOMIZED,
+        /* Block power iteration with re-orthogonalization */
+        SUBSPACE,
+        /* Tall-skinny QR of row blocks in worker processes */
+        TSQR
+}
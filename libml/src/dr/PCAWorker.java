@@ -0,0 +1,114 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Worker process of PCACoordinator. It reads one block of rows from a
+ * MappedDataMatrix file and answers the coordinator over its standard input
+ * and output:
+ *
+ * 1. sends the column statistics of the block;
+ * 2. receives the merged statistics, standardizes the block and sends its R
+ * factor, or the block itself when it has fewer rows than columns;
+ * 3. receives the global loadings and singular values and sends the scores
+ * and the squared norms of its standardized rows.
+ *
+ * Arguments: file rows cols rowMajor from to scaling.
+ */
+class PCAWorker {
+
+        private final double[][] block;
+        private final Scaling scaling;
+
+        PCAWorker(double[][] block, Scaling scaling) {
+                this.block = block;
+                this.scaling = scaling;
+        }
+
+        public static void main(String[] args) throws IOException {
+                // stdout carries the protocol, so stray output goes to stderr
+                PrintStream stdout = System.out;
+                System.setOut(System.err);
+                File file = new File(args[0]);
+                int rows = Integer.parseInt(args[1]);
+                int cols = Integer.parseInt(args[2]);
+                boolean rowMajor = Boolean.parseBoolean(args[3]);
+                int from = Integer.parseInt(args[4]);
+                int to = Integer.parseInt(args[5]);
+                Scaling scaling = Scaling.valueOf(args[6]);
+
+                double[][] block = new double[to - from][cols];
+                new MappedDataMatrix(file, rows, cols, rowMajor).getRows(from, to, block);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stdout));
+                new PCAWorker(block, scaling).serve(in, out);
+                out.close();
+        }
+
+        void serve(DataInputStream in, DataOutputStream out) throws IOException {
+                Standardizer local = new Standardizer(scaling);
+                local.fit(block, null);
+                local.write(out);
+                out.flush();
+
+                Standardizer.read(scaling, in).apply(block, block, null);
+                double[] rowSumOfSquares = new double[block.length];
+                for (int i = 0; i < block.length; i++) {
+                        rowSumOfSquares[i] = MatrixKernels.dot(block[i], block[i]);
+                }
+                double[][] R = block.length >= block[0].length ? new Matrix(block).qr().getR().getArray() : block;
+                out.writeInt(R.length);
+                for (double[] row : R) {
+                        for (int j = 0; j < row.length; j++) {
+                                out.writeDouble(row[j]);
+                        }
+                }
+                out.flush();
+
+                int k = in.readInt();
+                int cols = block[0].length;
+                double[][] V = new double[k][cols];
+                double[] sigma = new double[k];
+                for (int c = 0; c < k; c++) {
+                        for (int j = 0; j < cols; j++) {
+                                V[c][j] = in.readDouble();
+                        }
+                }
+                for (int c = 0; c < k; c++) {
+                        sigma[c] = in.readDouble();
+                }
+                for (int c = 0; c < k; c++) {
+                        for (int i = 0; i < block.length; i++) {
+                                out.writeDouble(MatrixKernels.dot(block[i], V[c]) / sigma[c]);
+                        }
+                }
+                for (int i = 0; i < block.length; i++) {
+                        out.writeDouble(rowSumOfSquares[i]);
+                }
+                out.flush();
+        }
+}
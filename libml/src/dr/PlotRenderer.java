@@ -21,6 +21,7 @@ import java.awt.Color;
 import java.awt.Paint;
 import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
 import org.jfree.chart.plot.DrawingSupplier;
 
 import org.jfree.chart.plot.XYPlot;
@@ -37,6 +38,9 @@ public class PlotRenderer extends XYLineAndShapeRenderer {
         private final Color[] avoidColors = {new Color(255, 255, 85)};
         private static final Shape dataPointsShape = new Ellipse2D.Double(-6, -6,
                 12, 12);
+        private static final Shape outlierShape = new Rectangle2D.Double(-7, -7, 14, 14);
+        private static final Paint outlierPaint = Color.RED;
+        private final PCADataset dataset;
 
         private boolean isAvoidColor(Color color) {
                 for (Color c : avoidColors) {
@@ -52,6 +56,7 @@ public class PlotRenderer extends XYLineAndShapeRenderer {
 
         public PlotRenderer(XYPlot plot, PCADataset dataset) {
                 super(false, true);
+                this.dataset = dataset;
 
                 this.setSeriesShape(0, dataPointsShape);
 
@@ -73,9 +78,17 @@ public class PlotRenderer extends XYLineAndShapeRenderer {
         public Paint getItemPaint(int series, int item) {
 
                 //int groupNumber = dataset.getGroupNumber(item);
+                if (dataset.isOutlier(item)) {
+                        return outlierPaint;
+                }
                 return paintsForGroups[item];
         }
 
+        @Override
+        public Shape getItemShape(int series, int item) {
+                return dataset.isOutlier(item) ? outlierShape : super.getItemShape(series, item);
+        }
+
         public Paint getGroupPaint(int groupNumber) {
                 return paintsForGroups[groupNumber];
         }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+import java.util.Random;
+
+/**
+ * Randomized range-finder SVD (Halko, Martinsson and Tropp 2011) for the
+ * leading k singular triplets. The range of X is sampled with k + oversampling
+ * Gaussian vectors, refined with a few power iterations, and the SVD is then
+ * taken of the small projected matrix. Every pass over X is one block product,
+ * so the cost is O(rows * cols * (k + oversampling)) per pass.
+ */
+class RandomizedSVD {
+
+        private final int oversampling;
+        private final int powerIterations;
+        private final long seed;
+        /* Left singular vectors, one array of length rows per component */
+        double[][] u;
+        /* Right singular vectors, one array of length cols per component */
+        double[][] v;
+        double[] singularValues;
+
+        RandomizedSVD(int oversampling, int powerIterations, long seed) {
+                if (oversampling < 0 || powerIterations < 0) {
+                        throw new IllegalArgumentException("Oversampling and power iterations must not be negative");
+                }
+                this.oversampling = oversampling;
+                this.powerIterations = powerIterations;
+                this.seed = seed;
+        }
+
+        /**
+         * Computes the first k singular triplets of X. X is only used through
+         * its block products.
+         */
+        void compute(DataMatrix X, int k) {
+                int rows = X.getRowCount();
+                int cols = X.getColumnCount();
+                int l = Math.min(k + oversampling, Math.min(rows, cols));
+                k = Math.min(k, l);
+
+                Random random = new Random(seed);
+                double[][] omega = new double[cols][l];
+                for (int j = 0; j < cols; j++) {
+                        for (int c = 0; c < l; c++) {
+                                omega[j][c] = random.nextGaussian();
+                        }
+                }
+
+                double[][] Y = new double[rows][l];
+                double[][] Z = new double[cols][l];
+                X.multiply(omega, Y);
+                double[][] Q = orthonormalize(Y);
+                for (int q = 0; q < powerIterations; q++) {
+                        X.transposeMultiply(Q, Z);
+                        X.multiply(orthonormalize(Z), Y);
+                        Q = orthonormalize(Y);
+                }
+
+                // B' = X'Q is cols x l, so its SVD B' = Ub S Vb' gives
+                // X ~ Q B = (Q Vb) S Ub'
+                X.transposeMultiply(Q, Z);
+                SingularValueDecomposition svd = new Matrix(Z).svd();
+                double[][] Ub = svd.getU().getArray();
+                double[][] Vb = svd.getV().getArray();
+                double[] s = svd.getSingularValues();
+
+                u = new double[k][rows];
+                v = new double[k][cols];
+                singularValues = new double[k];
+                for (int c = 0; c < k; c++) {
+                        singularValues[c] = s[c];
+                        for (int i = 0; i < rows; i++) {
+                                double sum = 0;
+                                for (int j = 0; j < l; j++) {
+                                        sum += Q[i][j] * Vb[j][c];
+                                }
+                                u[c][i] = sum;
+                        }
+                        for (int j = 0; j < cols; j++) {
+                                v[c][j] = Ub[j][c];
+                        }
+                }
+        }
+
+        /**
+         * @return Orthonormal basis of the columns of Y (thin Q factor)
+         */
+        private static double[][] orthonormalize(double[][] Y) {
+                return new Matrix(Y).qr().getQ().getArray();
+        }
+}
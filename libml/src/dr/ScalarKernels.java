@@ -0,0 +1,47 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Plain loops, used when the Vector API is not available.
+ */
+class ScalarKernels extends Kernels {
+
+        double dot(double[] a, double[] b) {
+                double sum = 0;
+                for (int i = 0; i < a.length; i++) {
+                        sum += a[i] * b[i];
+                }
+                return sum;
+        }
+
+        double squaredDistance(double[] a, double[] b) {
+                double sum = 0;
+                for (int i = 0; i < a.length; i++) {
+                        double d = a[i] - b[i];
+                        sum += d * d;
+                }
+                return sum;
+        }
+
+        void axpy(double alpha, double[] x, double[] y, int from, int to) {
+                for (int i = from; i < to; i++) {
+                        y[i] += alpha * x[i];
+                }
+        }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Column preprocessing applied before PCA. Every scaling except NONE also
+ * centers the columns.
+ */
+public enum Scaling {
+
+        /* Data is used as it is */
+        NONE,
+        /* Mean centering only */
+        MEAN_CENTER,
+        /* Centering and division by the standard deviation (autoscaling) */
+        UNIT_VARIANCE,
+        /* Centering and division by the square root of the standard deviation */
+        PARETO,
+        /* Centering and division by the range (max - min) */
+        RANGE
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Projects new samples on fitted loadings. A sample x is standardized with
+ * the stored column mean and scale and its score on component c is
+ * x . t_c / lambda_c, which for the training samples reproduces the unit
+ * score vectors shown in the scores plot. The product is blocked over rows
+ * and variables so that a tile of the projection matrix stays in cache while
+ * it is applied to a block of samples. Instances are immutable and can be
+ * shared between threads.
+ */
+class ScoreProjector {
+
+        /* Samples standardized and projected together */
+        private static final int ROW_BLOCK = 32;
+        /* Variables per tile of the projection matrix */
+        private static final int COLUMN_BLOCK = 1024;
+        /* Projection matrix t_c / lambda_c, one row per variable */
+        private final double[][] W;
+        /* Column preprocessing, null when the data was not standardized */
+        private final double[] mean;
+        private final double[] scale;
+
+        /**
+         * @param result Fitted loadings, read once to build the projection
+         * @param mean Column means, null when the data was not standardized
+         */
+        ScoreProjector(PCAResult result, double[] mean, double[] scale) {
+                int k = result.getComponentCount();
+                int nVars = k > 0 ? result.getLoadings(0).remaining() : 0;
+                W = new double[nVars][k];
+                for (int c = 0; c < k; c++) {
+                        DoubleBuffer t = result.getLoadings(c);
+                        double lambda = result.getEigenvalue(c);
+                        for (int j = 0; j < nVars; j++) {
+                                W[j][c] = t.get(j) / lambda;
+                        }
+                }
+                this.mean = mean;
+                this.scale = scale;
+        }
+
+        int getComponentCount() {
+                return W.length > 0 ? W[0].length : 0;
+        }
+
+        int getVariableCount() {
+                return W.length;
+        }
+
+        /**
+         * @param X Samples stored row after row, nVars values each
+         * @param scores Receives nRows * k scores, row after row
+         */
+        void project(double[] X, int nRows, double[] scores) {
+                int nVars = W.length;
+                int k = getComponentCount();
+                if (X.length < nRows * nVars || scores.length < nRows * k) {
+                        throw new IllegalArgumentException("Expected " + nRows + " samples of " + nVars
+                                + " variables and room for " + nRows * k + " scores");
+                }
+                double[] block = new double[Math.min(ROW_BLOCK, nRows) * nVars];
+                for (int from = 0; from < nRows; from += ROW_BLOCK) {
+                        int count = Math.min(ROW_BLOCK, nRows - from);
+                        System.arraycopy(X, from * nVars, block, 0, count * nVars);
+                        projectBlock(block, count, scores, from * k);
+                }
+        }
+
+        /**
+         * @return Scores with one row per sample and one column per component
+         */
+        double[][] project(double[][] X) {
+                int nVars = W.length;
+                int k = getComponentCount();
+                double[] block = new double[Math.min(ROW_BLOCK, X.length) * nVars];
+                double[] out = new double[Math.min(ROW_BLOCK, X.length) * k];
+                double[][] scores = new double[X.length][k];
+                for (int from = 0; from < X.length; from += ROW_BLOCK) {
+                        int count = Math.min(ROW_BLOCK, X.length - from);
+                        for (int r = 0; r < count; r++) {
+                                double[] row = X[from + r];
+                                if (row.length != nVars) {
+                                        throw new IllegalArgumentException("Sample " + (from + r) + " has "
+                                                + row.length + " values, expected " + nVars);
+                                }
+                                System.arraycopy(row, 0, block, r * nVars, nVars);
+                        }
+                        projectBlock(block, count, out, 0);
+                        for (int r = 0; r < count; r++) {
+                                System.arraycopy(out, r * k, scores[from + r], 0, k);
+                        }
+                }
+                return scores;
+        }
+
+        /**
+         * Standardizes count samples of block in place and writes their scores
+         * to scores[offset ..].
+         */
+        private void projectBlock(double[] block, int count, double[] scores, int offset) {
+                int nVars = W.length;
+                int k = getComponentCount();
+                if (mean != null) {
+                        for (int r = 0; r < count; r++) {
+                                int row = r * nVars;
+                                for (int j = 0; j < nVars; j++) {
+                                        block[row + j] = (block[row + j] - mean[j]) / scale[j];
+                                }
+                        }
+                }
+                for (int i = offset; i < offset + count * k; i++) {
+                        scores[i] = 0;
+                }
+                for (int tile = 0; tile < nVars; tile += COLUMN_BLOCK) {
+                        int tileEnd = Math.min(nVars, tile + COLUMN_BLOCK);
+                        for (int r = 0; r < count; r++) {
+                                int row = r * nVars;
+                                int out = offset + r * k;
+                                for (int j = tile; j < tileEnd; j++) {
+                                        double x = block[row + j];
+                                        double[] w = W[j];
+                                        for (int c = 0; c < k; c++) {
+                                                scores[out + c] += x * w[c];
+                                        }
+                                }
+                        }
+                }
+        }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse data matrix in CSR (compressed rows) or CSC (compressed
+ * columns) layout. The products only visit the stored non-zeros, and PCA
+ * centers it implicitly, so time and memory scale with the number of
+ * non-zeros instead of rows x cols.
+ */
+public class SparseDataMatrix implements DataMatrix {
+
+        private final int rows;
+        private final int cols;
+        private final boolean rowCompressed;
+        /* Start of every compressed row (or column) in indices and values */
+        private final int[] pointers;
+        /* Column (or row) index of every stored value */
+        private final int[] indices;
+        private final double[] values;
+
+        /**
+         * @param pointers rows + 1 offsets for CSR, cols + 1 offsets for CSC
+         * @param indices Column indices for CSR, row indices for CSC
+         * @param rowCompressed true for CSR, false for CSC
+         */
+        public SparseDataMatrix(int rows, int cols, int[] pointers, int[] indices, double[] values,
+                boolean rowCompressed) {
+                int n = rowCompressed ? rows : cols;
+                if (pointers.length != n + 1 || indices.length != values.length
+                        || pointers[n] != values.length) {
+                        throw new IllegalArgumentException("Inconsistent compressed sparse structure");
+                }
+                this.rows = rows;
+                this.cols = cols;
+                this.pointers = pointers;
+                this.indices = indices;
+                this.values = values;
+                this.rowCompressed = rowCompressed;
+        }
+
+        /**
+         * @return CSR copy of the non-zero values of X
+         */
+        public static SparseDataMatrix fromDense(double[][] X) {
+                int nnz = 0;
+                for (int i = 0; i < X.length; i++) {
+                        for (int j = 0; j < X[i].length; j++) {
+                                if (X[i][j] != 0) {
+                                        nnz++;
+                                }
+                        }
+                }
+                int[] pointers = new int[X.length + 1];
+                int[] indices = new int[nnz];
+                double[] values = new double[nnz];
+                int k = 0;
+                for (int i = 0; i < X.length; i++) {
+                        for (int j = 0; j < X[i].length; j++) {
+                                if (X[i][j] != 0) {
+                                        indices[k] = j;
+                                        values[k++] = X[i][j];
+                                }
+                        }
+                        pointers[i + 1] = k;
+                }
+                return new SparseDataMatrix(X.length, X[0].length, pointers, indices, values, true);
+        }
+
+        public int getRowCount() {
+                return rows;
+        }
+
+        public int getColumnCount() {
+                return cols;
+        }
+
+        public int getNonZeroCount() {
+                return values.length;
+        }
+
+        public void multiply(double[] x, double[] y) {
+                if (rowCompressed) {
+                        gather(x, y);
+                } else {
+                        scatter(x, y);
+                }
+        }
+
+        public void transposeMultiply(double[] x, double[] y) {
+                if (rowCompressed) {
+                        scatter(x, y);
+                } else {
+                        gather(x, y);
+                }
+        }
+
+        public void multiply(double[][] B, double[][] C) {
+                if (rowCompressed) {
+                        gather(B, C);
+                } else {
+                        scatter(B, C);
+                }
+        }
+
+        public void transposeMultiply(double[][] B, double[][] C) {
+                if (rowCompressed) {
+                        scatter(B, C);
+                } else {
+                        gather(B, C);
+                }
+        }
+
+        public void getRows(int from, int to, double[][] dst) {
+                for (int i = from; i < to; i++) {
+                        Arrays.fill(dst[i - from], 0);
+                }
+                if (rowCompressed) {
+                        for (int i = from; i < to; i++) {
+                                for (int k = pointers[i]; k < pointers[i + 1]; k++) {
+                                        dst[i - from][indices[k]] = values[k];
+                                }
+                        }
+                } else {
+                        for (int j = 0; j < cols; j++) {
+                                for (int k = pointers[j]; k < pointers[j + 1]; k++) {
+                                        int i = indices[k];
+                                        if (i >= from && i < to) {
+                                                dst[i - from][j] = values[k];
+                                        }
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Column mean, sum of squared deviations, minimum and maximum from the
+         * non-zeros only; the implicit zeros are accounted for analytically.
+         */
+        void columnStatistics(double[] mean, double[] m2, double[] min, double[] max) {
+                int[] nonZeros = new int[cols];
+                Arrays.fill(mean, 0);
+                Arrays.fill(min, Double.POSITIVE_INFINITY);
+                Arrays.fill(max, Double.NEGATIVE_INFINITY);
+                for (int v = 0; v < pointers.length - 1; v++) {
+                        for (int k = pointers[v]; k < pointers[v + 1]; k++) {
+                                int j = rowCompressed ? indices[k] : v;
+                                double x = values[k];
+                                mean[j] += x;
+                                nonZeros[j]++;
+                                if (x < min[j]) {
+                                        min[j] = x;
+                                }
+                                if (x > max[j]) {
+                                        max[j] = x;
+                                }
+                        }
+                }
+                for (int j = 0; j < cols; j++) {
+                        mean[j] /= rows;
+                        int zeros = rows - nonZeros[j];
+                        m2[j] = zeros * mean[j] * mean[j];
+                        if (zeros > 0) {
+                                min[j] = Math.min(min[j], 0);
+                                max[j] = Math.max(max[j], 0);
+                        }
+                }
+                for (int v = 0; v < pointers.length - 1; v++) {
+                        for (int k = pointers[v]; k < pointers[v + 1]; k++) {
+                                int j = rowCompressed ? indices[k] : v;
+                                double d = values[k] - mean[j];
+                                m2[j] += d * d;
+                        }
+                }
+        }
+
+        /**
+         * y[v] = sum of stored values of compressed vector v times x[index]
+         */
+        private void gather(double[] x, double[] y) {
+                for (int v = 0; v < pointers.length - 1; v++) {
+                        double sum = 0;
+                        for (int k = pointers[v]; k < pointers[v + 1]; k++) {
+                                sum += values[k] * x[indices[k]];
+                        }
+                        y[v] = sum;
+                }
+        }
+
+        /**
+         * y[index] += stored value times x[v] for every compressed vector v
+         */
+        private void scatter(double[] x, double[] y) {
+                Arrays.fill(y, 0);
+                for (int v = 0; v < pointers.length - 1; v++) {
+                        double xv = x[v];
+                        for (int k = pointers[v]; k < pointers[v + 1]; k++) {
+                                y[indices[k]] += values[k] * xv;
+                        }
+                }
+        }
+
+        private void gather(double[][] B, double[][] C) {
+                for (int v = 0; v < pointers.length - 1; v++) {
+                        double[] c = C[v];
+                        Arrays.fill(c, 0);
+                        for (int k = pointers[v]; k < pointers[v + 1]; k++) {
+                                double a = values[k];
+                                double[] b = B[indices[k]];
+                                for (int l = 0; l < c.length; l++) {
+                                        c[l] += a * b[l];
+                                }
+                        }
+                }
+        }
+
+        private void scatter(double[][] B, double[][] C) {
+                for (int i = 0; i < C.length; i++) {
+                        Arrays.fill(C[i], 0);
+                }
+                for (int v = 0; v < pointers.length - 1; v++) {
+                        double[] b = B[v];
+                        for (int k = pointers[v]; k < pointers[v + 1]; k++) {
+                                double a = values[k];
+                                double[] c = C[indices[k]];
+                                for (int l = 0; l < c.length; l++) {
+                                        c[l] += a * b[l];
+                                }
+                        }
+                }
+        }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+/**
+ * Implicitly standardized view (X - 1 * mean') * D^-1 of a DataMatrix, where D
+ * is the diagonal matrix of column scales. The centering is applied to the
+ * products as a rank-1 correction, so the underlying data is never modified
+ * or copied.
+ */
+class StandardizedDataMatrix implements DataMatrix {
+
+        private final DataMatrix X;
+        private final double[] mean;
+        private final double[] scale;
+        /* x / scale for the vector products */
+        private final double[] scaled;
+
+        StandardizedDataMatrix(DataMatrix X, double[] mean, double[] scale) {
+                this.X = X;
+                this.mean = mean;
+                this.scale = scale;
+                scaled = new double[X.getColumnCount()];
+        }
+
+        public int getRowCount() {
+                return X.getRowCount();
+        }
+
+        public int getColumnCount() {
+                return X.getColumnCount();
+        }
+
+        public void multiply(double[] x, double[] y) {
+                double shift = 0;
+                for (int j = 0; j < scaled.length; j++) {
+                        scaled[j] = x[j] / scale[j];
+                        shift += mean[j] * scaled[j];
+                }
+                X.multiply(scaled, y);
+                for (int i = 0; i < y.length; i++) {
+                        y[i] -= shift;
+                }
+        }
+
+        public void transposeMultiply(double[] x, double[] y) {
+                X.transposeMultiply(x, y);
+                double sum = 0;
+                for (int i = 0; i < x.length; i++) {
+                        sum += x[i];
+                }
+                for (int j = 0; j < y.length; j++) {
+                        y[j] = (y[j] - mean[j] * sum) / scale[j];
+                }
+        }
+
+        public void multiply(double[][] B, double[][] C) {
+                int l = B[0].length;
+                double[][] scaledB = new double[B.length][l];
+                double[] shift = new double[l];
+                for (int j = 0; j < B.length; j++) {
+                        for (int c = 0; c < l; c++) {
+                                scaledB[j][c] = B[j][c] / scale[j];
+                                shift[c] += mean[j] * scaledB[j][c];
+                        }
+                }
+                X.multiply(scaledB, C);
+                for (int i = 0; i < C.length; i++) {
+                        for (int c = 0; c < l; c++) {
+                                C[i][c] -= shift[c];
+                        }
+                }
+        }
+
+        public void transposeMultiply(double[][] B, double[][] C) {
+                X.transposeMultiply(B, C);
+                int l = B[0].length;
+                double[] sum = new double[l];
+                for (int i = 0; i < B.length; i++) {
+                        for (int c = 0; c < l; c++) {
+                                sum[c] += B[i][c];
+                        }
+                }
+                for (int j = 0; j < C.length; j++) {
+                        for (int c = 0; c < l; c++) {
+                                C[j][c] = (C[j][c] - mean[j] * sum[c]) / scale[j];
+                        }
+                }
+        }
+
+        public void getRows(int from, int to, double[][] rows) {
+                X.getRows(from, to, rows);
+                for (int i = 0; i < to - from; i++) {
+                        double[] row = rows[i];
+                        for (int j = 0; j < mean.length; j++) {
+                                row[j] = (row[j] - mean[j]) / scale[j];
+                        }
+                }
+        }
+}
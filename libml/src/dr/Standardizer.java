@@ -0,0 +1,300 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.Matrix;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Column standardization for PCA. The mean, variance, minimum and maximum of
+ * every variable (column) are computed in a single Welford pass, split over
+ * column blocks when a pool is given. A DataMatrix is read block by block.
+ * The transformation x' = (x - mean) / scale is then applied in place or
+ * fused into a copy.
+ */
+public class Standardizer {
+
+        /* Values read at a time when fitting a DataMatrix */
+        private static final int BLOCK_VALUES = 1 << 17;
+        private final Scaling scaling;
+        private double[] mean;
+        private double[] m2;
+        private double[] min;
+        private double[] max;
+        private int count;
+        /* Divisor applied after centering, 1 when the column is not scaled */
+        private double[] scale;
+
+        public Standardizer(Scaling scaling) {
+                this.scaling = scaling;
+        }
+
+        public Scaling getScaling() {
+                return scaling;
+        }
+
+        /**
+         * Computes the column statistics of X and standardizes X in place.
+         * @param parallelism Number of threads, 1 runs on the calling thread
+         */
+        public void standardize(Matrix X, int parallelism) {
+                ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+                try {
+                        double[][] x = X.getArray();
+                        fit(x, pool);
+                        apply(x, x, pool);
+                } finally {
+                        if (pool != null) {
+                                pool.shutdown();
+                        }
+                }
+        }
+
+        /**
+         * @return Column means, zero for Scaling.NONE
+         */
+        public double[] getMean() {
+                return scaling == Scaling.NONE ? new double[mean.length] : mean.clone();
+        }
+
+        /**
+         * @return Column divisors used by the scaling
+         */
+        public double[] getScale() {
+                return scale.clone();
+        }
+
+        /**
+         * @return Sample standard deviation of every column
+         */
+        public double[] getStandardDeviation() {
+                double[] sd = new double[m2.length];
+                for (int j = 0; j < sd.length; j++) {
+                        sd[j] = count > 1 ? Math.sqrt(m2[j] / (count - 1)) : 0;
+                }
+                return sd;
+        }
+
+        /**
+         * One Welford pass over the columns of X.
+         */
+        void fit(double[][] X, ForkJoinPool pool) {
+                int cols = X[0].length;
+                init(cols);
+                update(X, X.length, pool);
+                computeScale();
+        }
+
+        /**
+         * One Welford pass over the columns of a DataMatrix, reading blocks of
+         * rows so that only one block is held in memory. Sparse matrices are
+         * summarized from their non-zeros without densifying any rows.
+         */
+        void fit(DataMatrix X, ForkJoinPool pool) {
+                int cols = X.getColumnCount();
+                init(cols);
+                if (X instanceof SparseDataMatrix) {
+                        ((SparseDataMatrix) X).columnStatistics(mean, m2, min, max);
+                        count = X.getRowCount();
+                        computeScale();
+                        return;
+                }
+                int blockRows = Math.max(1, BLOCK_VALUES / cols);
+                double[][] block = new double[Math.min(blockRows, X.getRowCount())][cols];
+                for (int from = 0; from < X.getRowCount(); from += blockRows) {
+                        int to = Math.min(X.getRowCount(), from + blockRows);
+                        X.getRows(from, to, block);
+                        update(block, to - from, pool);
+                }
+                computeScale();
+        }
+
+        /**
+         * @return Sum of squares of every column after the standardization
+         */
+        double[] getColumnSumOfSquares() {
+                double[] ss = new double[m2.length];
+                for (int j = 0; j < ss.length; j++) {
+                        if (scaling == Scaling.NONE) {
+                                ss[j] = m2[j] + count * mean[j] * mean[j];
+                        } else {
+                                ss[j] = m2[j] / (scale[j] * scale[j]);
+                        }
+                }
+                return ss;
+        }
+
+        /**
+         * Adds the statistics of another set of rows with the same columns,
+         * using the pairwise update of Chan et al., and recomputes the scale.
+         */
+        void merge(Standardizer other) {
+                int n = count + other.count;
+                for (int j = 0; j < mean.length; j++) {
+                        double delta = other.mean[j] - mean[j];
+                        mean[j] += n > 0 ? delta * other.count / n : 0;
+                        m2[j] += other.m2[j] + (n > 0 ? delta * delta * count * other.count / n : 0);
+                        min[j] = Math.min(min[j], other.min[j]);
+                        max[j] = Math.max(max[j], other.max[j]);
+                }
+                count = n;
+                computeScale();
+        }
+
+        /**
+         * Writes the row count and the column statistics.
+         */
+        void write(DataOutput out) throws IOException {
+                out.writeInt(count);
+                out.writeInt(mean.length);
+                for (double[] values : new double[][]{mean, m2, min, max}) {
+                        for (int j = 0; j < values.length; j++) {
+                                out.writeDouble(values[j]);
+                        }
+                }
+        }
+
+        /**
+         * Reads statistics written by write and computes the scale.
+         */
+        static Standardizer read(Scaling scaling, DataInput in) throws IOException {
+                Standardizer standardizer = new Standardizer(scaling);
+                int count = in.readInt();
+                standardizer.init(in.readInt());
+                standardizer.count = count;
+                for (double[] values : new double[][]{standardizer.mean, standardizer.m2,
+                                standardizer.min, standardizer.max}) {
+                        for (int j = 0; j < values.length; j++) {
+                                values[j] = in.readDouble();
+                        }
+                }
+                standardizer.computeScale();
+                return standardizer;
+        }
+
+        private void init(int cols) {
+                count = 0;
+                mean = new double[cols];
+                m2 = new double[cols];
+                min = new double[cols];
+                max = new double[cols];
+                Arrays.fill(min, Double.POSITIVE_INFINITY);
+                Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        /**
+         * Adds the first nRows rows of X to the running statistics.
+         */
+        private void update(final double[][] X, final int nRows, ForkJoinPool pool) {
+                MatrixKernels.forRange(mean.length, pool, new MatrixKernels.RangeBody() {
+
+                        public void run(int from, int to) {
+                                fitColumns(X, nRows, from, to);
+                        }
+                });
+                count += nRows;
+        }
+
+        private void computeScale() {
+                int cols = mean.length;
+                scale = new double[cols];
+                for (int j = 0; j < cols; j++) {
+                        double sd = count > 1 ? Math.sqrt(m2[j] / (count - 1)) : 0;
+                        double s;
+                        switch (scaling) {
+                                case UNIT_VARIANCE:
+                                        s = sd;
+                                        break;
+                                case PARETO:
+                                        s = Math.sqrt(sd);
+                                        break;
+                                case RANGE:
+                                        s = max[j] - min[j];
+                                        break;
+                                default:
+                                        s = 1;
+                        }
+                        // constant columns are only centered
+                        scale[j] = s > 0 ? s : 1;
+                }
+        }
+
+        /**
+         * Writes the standardized rows of src to dst, which may be src itself.
+         * With Scaling.NONE the rows are only copied and fit is not needed.
+         */
+        void apply(final double[][] src, final double[][] dst, ForkJoinPool pool) {
+                MatrixKernels.forRange(src.length, pool, new MatrixKernels.RangeBody() {
+
+                        public void run(int from, int to) {
+                                applyRows(src, dst, from, to);
+                        }
+                });
+        }
+
+        /**
+         * Standardizes a single row in place.
+         */
+        void apply(double[] row) {
+                if (scaling == Scaling.NONE) {
+                        return;
+                }
+                for (int j = 0; j < row.length; j++) {
+                        row[j] = (row[j] - mean[j]) / scale[j];
+                }
+        }
+
+        private void fitColumns(double[][] X, int nRows, int from, int to) {
+                for (int i = 0; i < nRows; i++) {
+                        double[] row = X[i];
+                        double n = count + i + 1;
+                        for (int j = from; j < to; j++) {
+                                double x = row[j];
+                                double delta = x - mean[j];
+                                mean[j] += delta / n;
+                                m2[j] += delta * (x - mean[j]);
+                                if (x < min[j]) {
+                                        min[j] = x;
+                                }
+                                if (x > max[j]) {
+                                        max[j] = x;
+                                }
+                        }
+                }
+        }
+
+        private void applyRows(double[][] src, double[][] dst, int from, int to) {
+                for (int i = from; i < to; i++) {
+                        double[] in = src[i];
+                        double[] out = dst[i];
+                        if (scaling == Scaling.NONE) {
+                                if (out != in) {
+                                        System.arraycopy(in, 0, out, 0, in.length);
+                                }
+                        } else {
+                                for (int j = 0; j < in.length; j++) {
+                                        out[j] = (in[j] - mean[j]) / scale[j];
+                                }
+                        }
+                }
+        }
+}
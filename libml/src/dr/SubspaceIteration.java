@@ -0,0 +1,215 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Block power (subspace) iteration for the leading eigenvectors of X'X.
+ * A block of k + guard vectors is multiplied by X'X, re-orthonormalized
+ * with a QR factorization and rotated by a Rayleigh-Ritz step, so all
+ * components converge together at the rate of the gap to the first vector
+ * outside the block instead of the gap to their neighbour. Component c has
+ * converged when its residual ||X'X v_c - lambda_c v_c|| is below tolerance
+ * * lambda_c, which is read from the product already computed for the next
+ * iteration. Every iteration is two block passes over X.
+ */
+class SubspaceIteration {
+
+        /* Ritz values below this fraction of the largest are treated as zero */
+        private static final double NULL_SPACE = 1e-14;
+        private final int guard;
+        private final double tolerance;
+        private final int maxIterations;
+        private final long seed;
+        /* Loadings sigma * v, one array of length cols per component */
+        double[][] t;
+        /* Unit scores X v / sigma, one array of length rows per component */
+        double[][] p;
+        /* Number of iterations until each component had converged */
+        int[] iterations;
+        /* Relative residual ||X'X v - lambda v|| / lambda of each component */
+        double[] residuals;
+        /* Whether all components converged within maxIterations */
+        boolean converged;
+        /* Loadings of a previous model used as the first block vectors */
+        private double[][] start;
+
+        SubspaceIteration(int guard, double tolerance, int maxIterations, long seed) {
+                this.guard = guard;
+                this.tolerance = tolerance;
+                this.maxIterations = maxIterations;
+                this.seed = seed;
+        }
+
+        /**
+         * Starts the block from the given loading vectors, one array of
+         * length cols each; the remaining block vectors stay random.
+         */
+        void setStart(double[][] start) {
+                this.start = start;
+        }
+
+        void compute(DataMatrix X, int k) {
+                int rows = X.getRowCount();
+                int cols = X.getColumnCount();
+                int b = Math.min(k + guard, Math.min(rows, cols));
+                k = Math.min(k, b);
+
+                Random random = new Random(seed);
+                double[][] V = new double[cols][b];
+                for (int j = 0; j < cols; j++) {
+                        for (int c = 0; c < b; c++) {
+                                V[j][c] = random.nextGaussian();
+                        }
+                }
+                if (start != null) {
+                        for (int c = 0; c < Math.min(b, start.length); c++) {
+                                for (int j = 0; j < cols; j++) {
+                                        V[j][c] = start[c][j];
+                                }
+                        }
+                }
+                V = orthonormalize(V);
+                double[][] Y = new double[rows][b];
+                double[][] Z = new double[cols][b];
+                double[] values = new double[b];
+                iterations = new int[k];
+                residuals = new double[k];
+                int converged = 0;
+                int iteration = 0;
+                while (converged < k && iteration < maxIterations) {
+                        iteration++;
+                        X.multiply(V, Y);
+                        // Rayleigh-Ritz: rotate V to the eigenvectors of V'X'XV = Y'Y
+                        double[][] W = ritzVectors(Y, values);
+                        V = rotate(V, W);
+                        Y = rotate(Y, W);
+                        X.transposeMultiply(Y, Z);
+                        while (converged < k && hasConverged(Z, V, values, converged)) {
+                                iterations[converged++] = iteration;
+                        }
+                        if (converged < k) {
+                                V = orthonormalize(Z);
+                        }
+                }
+                for (int c = converged; c < k; c++) {
+                        iterations[c] = iteration;
+                        hasConverged(Z, V, values, c);
+                }
+                this.converged = converged == k;
+
+                t = new double[k][cols];
+                p = new double[k][rows];
+                for (int c = 0; c < k; c++) {
+                        double sigma = Math.sqrt(values[c]);
+                        if (sigma == 0) {
+                                t = Arrays.copyOf(t, c);
+                                p = Arrays.copyOf(p, c);
+                                iterations = Arrays.copyOf(iterations, c);
+                                residuals = Arrays.copyOf(residuals, c);
+                                break;
+                        }
+                        for (int j = 0; j < cols; j++) {
+                                t[c][j] = Z[j][c] / sigma;
+                        }
+                        for (int i = 0; i < rows; i++) {
+                                p[c][i] = Y[i][c] / sigma;
+                        }
+                }
+        }
+
+        /**
+         * Stores the relative residual of component c.
+         * @return Whether Z_c = X'X v_c is within the tolerance of
+         * lambda_c v_c
+         */
+        private boolean hasConverged(double[][] Z, double[][] V, double[] values, int c) {
+                if (values[c] <= NULL_SPACE * values[0]) {
+                        residuals[c] = 0;
+                        return true;
+                }
+                double sum = 0;
+                for (int j = 0; j < Z.length; j++) {
+                        double r = Z[j][c] - values[c] * V[j][c];
+                        sum += r * r;
+                }
+                residuals[c] = Math.sqrt(sum) / values[c];
+                return residuals[c] <= tolerance;
+        }
+
+        /**
+         * @return Eigenvectors of Y'Y as columns, by decreasing eigenvalue,
+         * which are written to values
+         */
+        private static double[][] ritzVectors(double[][] Y, double[] values) {
+                int b = values.length;
+                double[][] H = new double[b][b];
+                for (int i = 0; i < Y.length; i++) {
+                        double[] y = Y[i];
+                        for (int c = 0; c < b; c++) {
+                                for (int d = c; d < b; d++) {
+                                        H[c][d] += y[c] * y[d];
+                                }
+                        }
+                }
+                for (int c = 0; c < b; c++) {
+                        for (int d = 0; d < c; d++) {
+                                H[c][d] = H[d][c];
+                        }
+                }
+                EigenvalueDecomposition eig = new Matrix(H).eig();
+                double[] ascending = eig.getRealEigenvalues();
+                double[][] vectors = eig.getV().getArray();
+                double[][] W = new double[b][b];
+                for (int c = 0; c < b; c++) {
+                        values[c] = Math.max(0, ascending[b - 1 - c]);
+                        for (int d = 0; d < b; d++) {
+                                W[d][c] = vectors[d][b - 1 - c];
+                        }
+                }
+                return W;
+        }
+
+        /**
+         * @return A * W for a tall A and a small square W
+         */
+        private static double[][] rotate(double[][] A, double[][] W) {
+                int b = W.length;
+                double[][] out = new double[A.length][b];
+                for (int i = 0; i < A.length; i++) {
+                        double[] a = A[i];
+                        double[] o = out[i];
+                        for (int d = 0; d < b; d++) {
+                                double ad = a[d];
+                                double[] w = W[d];
+                                for (int c = 0; c < b; c++) {
+                                        o[c] += ad * w[c];
+                                }
+                        }
+                }
+                return out;
+        }
+
+        private static double[][] orthonormalize(double[][] A) {
+                return new Matrix(A).qr().getQ().getArray();
+        }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2007-2010 VTT Biotechnology
+ * This file is part of gslibml.
+ *
+ * gslibml is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * gslibml is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * gslibml; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package dr;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread-safe pool of NIPALS workspaces. A workspace is taken for one fit
+ * and given back afterwards, so concurrent fits never share buffers and the
+ * number of workspaces never exceeds the number of fits running at once.
+ * The workspaces keep their residual buffers, so jobs of the same shape
+ * reuse the n x p copy of the data as well as the vectors.
+ */
+class WorkspacePool {
+
+        private final ConcurrentLinkedQueue<NipalsWorkspace> free = new ConcurrentLinkedQueue<NipalsWorkspace>();
+
+        /**
+         * @return Workspace sized for a rows x cols problem. A free workspace
+         * whose residual buffer can hold the problem is preferred, then any
+         * free one.
+         */
+        NipalsWorkspace acquire(int rows, int cols) {
+                for (NipalsWorkspace workspace : free) {
+                        // another thread may take it between the test and the removal
+                        if (workspace.canHold(rows, cols) && free.remove(workspace)) {
+                                workspace.ensureCapacity(rows, cols);
+                                return workspace;
+                        }
+                }
+                NipalsWorkspace workspace = free.poll();
+                if (workspace == null) {
+                        return new NipalsWorkspace(rows, cols);
+                }
+                workspace.ensureCapacity(rows, cols);
+                return workspace;
+        }
+
+        void release(NipalsWorkspace workspace) {
+                free.offer(workspace);
+        }
+}